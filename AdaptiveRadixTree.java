@@ -0,0 +1,733 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Dictionary engine that stores words in an adaptive radix tree over the bytes
+ * of their keys, as an alternative to RedBlackTree for SearchBackend. Keys are
+ * encoded with FrontCodedIndex.encode, whose bytes sort like the keys.
+ *
+ * Every node consumes a compressed path of bytes shared by all words below it
+ * and then branches on the next byte. A node has room for 4, 16, 48 or 256
+ * children and grows or shrinks between these sizes as children are added or
+ * removed, so sparse nodes stay small. A word is stored in the node where its
+ * key ends. Finding a word takes O(key length) steps independent of the number
+ * of words, and listing the k words with a prefix takes O(prefix length + k).
+ *
+ * Every node also counts the words below it, which gives rank, select and
+ * paging like in RedBlackTree. Words are returned in the order of
+ * Word.compareTo, from last to first, so both engines list them the same way.
+ */
+public class AdaptiveRadixTree implements OrderedTreeInterface<Word> {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * A node of the tree. With up to 16 children, keys holds the sorted
+     * branching bytes and children the child for each of them. With 48
+     * children, keys has one entry per byte holding the position of its child
+     * plus one, or 0. With 256 children, children is indexed by the byte.
+     */
+    protected static final class Node {
+        byte[] prefix; // bytes every key below this node continues with
+        Word value; // the word whose key ends after prefix, or null
+        int count; // number of words in the subtree
+        int childCount;
+        byte[] keys;
+        Node[] children;
+
+        Node(byte[] prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    protected Node root;
+    protected int modCount = 0; // number of structural changes, used by iterators to detect them
+
+    /**
+     * Inserts data into the tree.
+     * @return true if the value was inserted
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when a word with the same key is already contained in the tree
+     */
+    @Override
+    public boolean insert(Word data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        byte[] key = FrontCodedIndex.encode(data.getKey());
+        if (findNode(key) != null) {
+            throw new IllegalArgumentException("This RedBlackTree already contains value " + data.toString());
+        }
+        root = insert(root, key, 0, data);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes the word with the same key as data from the tree.
+     * @return true if the value was removed
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when data is not stored in the tree
+     */
+    @Override
+    public boolean remove(Word data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        byte[] key = FrontCodedIndex.encode(data.getKey());
+        if (findNode(key) == null) {
+            throw new IllegalArgumentException(
+                    "The following value is not in the tree and cannot be deleted: " + data.toString());
+        }
+        root = remove(root, key, 0);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Inserts the words whose keys are not contained yet, one by one since
+     * every insertion only changes the nodes along its key.
+     * @return for each word in turn whether it was inserted
+     * @throws NullPointerException when a word is null, before anything is inserted
+     */
+    @Override
+    public boolean[] insertAll(Collection<? extends Word> values) throws NullPointerException {
+        byte[][] keys = encodeAll(values);
+        boolean[] inserted = new boolean[keys.length];
+        int i = 0;
+        for (Word word : values) {
+            if (findNode(keys[i]) == null) {
+                root = insert(root, keys[i], 0, word);
+                inserted[i] = true;
+            }
+            i++;
+        }
+        modCount++;
+        return inserted;
+    }
+
+    /**
+     * Removes the words whose keys are contained.
+     * @return for each word in turn whether it was removed
+     * @throws NullPointerException when a word is null, before anything is removed
+     */
+    @Override
+    public boolean[] removeAll(Collection<? extends Word> values) throws NullPointerException {
+        byte[][] keys = encodeAll(values);
+        boolean[] removed = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (findNode(keys[i]) != null) {
+                root = remove(root, keys[i], 0);
+                removed[i] = true;
+            }
+        }
+        modCount++;
+        return removed;
+    }
+
+    private static byte[][] encodeAll(Collection<? extends Word> values) {
+        byte[][] keys = new byte[values.size()][];
+        int i = 0;
+        for (Word word : values) {
+            if (word == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+            keys[i++] = FrontCodedIndex.encode(word.getKey());
+        }
+        return keys;
+    }
+
+    @Override
+    public Word search(Word data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("Word input is null.");
+        Node node = findNode(FrontCodedIndex.encode(data.getKey()));
+        if (node == null) throw new IllegalArgumentException("Word does not exist in dictionary.");
+        return node.value;
+    }
+
+    /**
+     * Searches for the word the probe is equal to. A probe that is also a
+     * CharSequence, like WordProbe, is read as the key of the word and found
+     * in O(key length) steps without allocating. Any other probe is compared
+     * with every word in turn.
+     */
+    @Override
+    public Word find(Probe<? super Word> probe) {
+        if (probe == null) throw new NullPointerException("Probe is null.");
+        if (!(probe instanceof CharSequence)) {
+            for (Word word : this) {
+                if (probe.compareTo(word) == 0) return word;
+            }
+            return null;
+        }
+        CharSequence chars = (CharSequence) probe;
+        int length = chars.length();
+        // the next byte of the key is byte part of the encoding of character index
+        int index = 0;
+        int part = 0;
+        Node node = root;
+        while (node != null) {
+            for (byte expected : node.prefix) {
+                if (index == length) return null;
+                char c = chars.charAt(index);
+                if (encodedByte(c, part) != (expected & 0xFF)) return null;
+                if (++part == encodedLength(c)) {
+                    part = 0;
+                    index++;
+                }
+            }
+            if (index == length) {
+                return node.value;
+            }
+            char c = chars.charAt(index);
+            node = child(node, encodedByte(c, part));
+            if (++part == encodedLength(c)) {
+                part = 0;
+                index++;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(Word data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        return findNode(FrontCodedIndex.encode(data.getKey())) != null;
+    }
+
+    /**
+     * Returns the words whose keys start with the key of data, in order, or
+     * null when data is not in the tree.
+     */
+    @Override
+    public ArrayList<Word> getSubtree(Word data) {
+        if (!contains(data)) {
+            return null;
+        }
+        return withPrefix(data.getKey(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns up to limit words whose keys start with the normalized prefix,
+     * in order. The words are found in O(prefix length + limit) steps.
+     */
+    public ArrayList<Word> withPrefix(String prefix, int limit) {
+        byte[] key = FrontCodedIndex.encode(Word.normalize(prefix));
+        ArrayList<Word> words = new ArrayList<>();
+        Node node = root;
+        int depth = 0;
+        while (node != null && depth < key.length) {
+            // the prefix may end inside the compressed path of the node
+            int matched = 0;
+            while (matched < node.prefix.length && depth + matched < key.length) {
+                if (node.prefix[matched] != key[depth + matched]) return words;
+                matched++;
+            }
+            depth += matched;
+            if (depth == key.length) break;
+            node = child(node, key[depth++] & 0xFF);
+        }
+        if (node != null) {
+            Iterator<Word> iterator = new TreeOrderIterator(node, 0);
+            while (iterator.hasNext() && words.size() < limit) {
+                words.add(iterator.next());
+            }
+        }
+        return words;
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Inserts all the words. The tree is left unchanged when a word is null or
+     * a key is contained twice or already in the tree.
+     */
+    @Override
+    public void bulkLoad(Iterable<Word> data) throws NullPointerException, IllegalArgumentException {
+        ArrayList<byte[]> keys = new ArrayList<>();
+        ArrayList<Word> words = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        for (Word word : data) {
+            if (word == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+            byte[] key = FrontCodedIndex.encode(word.getKey());
+            if (!seen.add(word.getKey()) || findNode(key) != null) {
+                throw new IllegalArgumentException("This RedBlackTree already contains value " + word.toString());
+            }
+            keys.add(key);
+            words.add(word);
+        }
+        for (int i = 0; i < words.size(); i++) {
+            root = insert(root, keys.get(i), 0, words.get(i));
+        }
+        modCount++;
+    }
+
+    @Override
+    public ArrayList<Word> rangeFrom(Word start, Predicate<? super Word> inRange, int limit) {
+        ArrayList<Word> words = new ArrayList<>();
+        Iterator<Word> iterator = new TreeOrderIterator(root, rank(start));
+        while (iterator.hasNext() && words.size() < limit) {
+            Word word = iterator.next();
+            if (!inRange.test(word)) break;
+            words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Returns the number of words that come before data in the order of the
+     * tree, which are the words with larger keys.
+     */
+    @Override
+    public int rank(Word data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        byte[] key = FrontCodedIndex.encode(data.getKey());
+        int rank = 0;
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            for (int i = 0; i < node.prefix.length; i++) {
+                if (depth + i == key.length) {
+                    // every key below extends the key, so it is larger
+                    return rank + node.count;
+                }
+                int compare = (node.prefix[i] & 0xFF) - (key[depth + i] & 0xFF);
+                if (compare != 0) {
+                    return compare > 0 ? rank + node.count : rank;
+                }
+            }
+            depth += node.prefix.length;
+            if (depth == key.length) {
+                // the children hold longer keys, the value of the node is the key itself
+                return rank + node.count - (node.value != null ? 1 : 0);
+            }
+            int b = key[depth++] & 0xFF;
+            for (int c = lowerChildByte(node, 256); c > b; c = lowerChildByte(node, c)) {
+                rank += child(node, c).count;
+            }
+            node = child(node, b);
+        }
+        return rank;
+    }
+
+    @Override
+    public Word select(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size());
+        }
+        return new TreeOrderIterator(root, index).next();
+    }
+
+    @Override
+    public ArrayList<Word> page(int offset, int limit) {
+        if (offset < 0) throw new IndexOutOfBoundsException("Negative offset: " + offset);
+        ArrayList<Word> words = new ArrayList<>();
+        if (offset >= size() || limit <= 0) {
+            return words;
+        }
+        Iterator<Word> iterator = new TreeOrderIterator(root, offset);
+        while (iterator.hasNext() && words.size() < limit) {
+            words.add(iterator.next());
+        }
+        return words;
+    }
+
+    /**
+     * Returns a fail-fast iterator over the words in the order of the tree.
+     */
+    @Override
+    public Iterator<Word> iterator() {
+        return new TreeOrderIterator(root, 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (Word value : this) {
+            if (sb.length() > 2) sb.append(", ");
+            sb.append(value);
+        }
+        return sb.append(" ]").toString();
+    }
+
+    /**
+     * Iterator that walks a subtree from its largest key to its smallest: at
+     * every node the children from the largest byte down, then the word of the
+     * node itself. The stack holds the path to the current node and for each
+     * node the byte of the child visited last.
+     */
+    private class TreeOrderIterator implements Iterator<Word> {
+        private Node[] nodes = new Node[16];
+        private int[] visited = new int[16];
+        private int depth = -1;
+        private Word next;
+        private final int expectedModCount = modCount;
+
+        /**
+         * Starts at position index of the subtree below start.
+         */
+        TreeOrderIterator(Node start, int index) {
+            if (start == null || index >= start.count) {
+                return;
+            }
+            push(start);
+            // descend into the child that holds position index
+            while (true) {
+                Node node = nodes[depth];
+                Node below = null;
+                for (int c = lowerChildByte(node, 256); c >= 0; c = lowerChildByte(node, c)) {
+                    Node candidate = child(node, c);
+                    if (index < candidate.count) {
+                        visited[depth] = c;
+                        below = candidate;
+                        break;
+                    }
+                    index -= candidate.count;
+                }
+                if (below == null) {
+                    // all children come before position index, so it is the word of the node
+                    visited[depth] = -1;
+                    break;
+                }
+                push(below);
+            }
+            next = advance();
+        }
+
+        private void push(Node node) {
+            if (++depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                visited = Arrays.copyOf(visited, depth * 2);
+            }
+            nodes[depth] = node;
+            visited[depth] = 256;
+        }
+
+        private Word advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                int c = lowerChildByte(node, visited[depth]);
+                if (c >= 0) {
+                    visited[depth] = c;
+                    push(child(node, c));
+                    continue;
+                }
+                // all children are done, the word of the node comes last
+                depth--;
+                if (node.value != null) {
+                    return node.value;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Word next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next == null) throw new NoSuchElementException();
+            Word result = next;
+            next = advance();
+            return result;
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods working on nodes and encoded keys
+
+    private Node findNode(byte[] key) {
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            byte[] prefix = node.prefix;
+            if (key.length - depth < prefix.length) return null;
+            for (int i = 0; i < prefix.length; i++) {
+                if (prefix[i] != key[depth + i]) return null;
+            }
+            depth += prefix.length;
+            if (depth == key.length) {
+                return node.value != null ? node : null;
+            }
+            node = child(node, key[depth++] & 0xFF);
+        }
+        return null;
+    }
+
+    private Node leaf(byte[] key, int from, Word word) {
+        Node leaf = new Node(from == key.length ? EMPTY : Arrays.copyOfRange(key, from, key.length));
+        leaf.value = word;
+        leaf.count = 1;
+        return leaf;
+    }
+
+    /**
+     * Inserts word with key below node, whose prefix starts at position depth
+     * of key, and returns the node that takes the place of node. The key must
+     * not be in the tree yet.
+     */
+    private Node insert(Node node, byte[] key, int depth, Word word) {
+        if (node == null) {
+            return leaf(key, depth, word);
+        }
+        byte[] prefix = node.prefix;
+        int matched = 0;
+        while (matched < prefix.length && depth + matched < key.length && prefix[matched] == key[depth + matched]) {
+            matched++;
+        }
+        if (matched < prefix.length) {
+            // the key leaves the compressed path, which is split by a new node
+            Node split = new Node(Arrays.copyOf(prefix, matched));
+            split.count = node.count + 1;
+            node.prefix = Arrays.copyOfRange(prefix, matched + 1, prefix.length);
+            addChild(split, prefix[matched] & 0xFF, node);
+            if (depth + matched == key.length) {
+                split.value = word;
+            } else {
+                addChild(split, key[depth + matched] & 0xFF, leaf(key, depth + matched + 1, word));
+            }
+            return split;
+        }
+        depth += prefix.length;
+        node.count++;
+        if (depth == key.length) {
+            node.value = word;
+            return node;
+        }
+        int b = key[depth] & 0xFF;
+        Node below = child(node, b);
+        if (below == null) {
+            addChild(node, b, leaf(key, depth + 1, word));
+        } else {
+            Node replacement = insert(below, key, depth + 1, word);
+            if (replacement != below) setChild(node, b, replacement);
+        }
+        return node;
+    }
+
+    /**
+     * Removes the key, which must be in the tree, from below node and returns
+     * the node that takes the place of node, which may be null.
+     */
+    private Node remove(Node node, byte[] key, int depth) {
+        depth += node.prefix.length;
+        node.count--;
+        if (depth == key.length) {
+            node.value = null;
+        } else {
+            int b = key[depth] & 0xFF;
+            Node below = child(node, b);
+            Node replacement = remove(below, key, depth + 1);
+            if (replacement == null) {
+                removeChild(node, b);
+            } else if (replacement != below) {
+                setChild(node, b, replacement);
+            }
+        }
+        if (node.value == null && node.childCount == 0) {
+            return null;
+        }
+        if (node.value == null && node.childCount == 1) {
+            // a node without a word and with one child is merged into the child
+            int b = lowerChildByte(node, 256);
+            Node only = child(node, b);
+            byte[] merged = Arrays.copyOf(node.prefix, node.prefix.length + 1 + only.prefix.length);
+            merged[node.prefix.length] = (byte) b;
+            System.arraycopy(only.prefix, 0, merged, node.prefix.length + 1, only.prefix.length);
+            only.prefix = merged;
+            return only;
+        }
+        return node;
+    }
+
+    private static Node child(Node node, int b) {
+        Node[] children = node.children;
+        if (children == null) {
+            return null;
+        }
+        if (children.length <= 16) {
+            byte[] keys = node.keys;
+            for (int i = 0; i < node.childCount; i++) {
+                if ((keys[i] & 0xFF) == b) return children[i];
+            }
+            return null;
+        }
+        if (children.length == 48) {
+            int slot = node.keys[b] & 0xFF;
+            return slot == 0 ? null : children[slot - 1];
+        }
+        return children[b];
+    }
+
+    /**
+     * Returns the largest byte below limit that node has a child for, or -1.
+     */
+    private static int lowerChildByte(Node node, int limit) {
+        Node[] children = node.children;
+        if (children == null) {
+            return -1;
+        }
+        if (children.length <= 16) {
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                int b = node.keys[i] & 0xFF;
+                if (b < limit) return b;
+            }
+            return -1;
+        }
+        for (int b = limit - 1; b >= 0; b--) {
+            if (children.length == 48 ? node.keys[b] != 0 : children[b] != null) return b;
+        }
+        return -1;
+    }
+
+    private static void setChild(Node node, int b, Node child) {
+        Node[] children = node.children;
+        if (children.length <= 16) {
+            for (int i = 0; i < node.childCount; i++) {
+                if ((node.keys[i] & 0xFF) == b) children[i] = child;
+            }
+        } else if (children.length == 48) {
+            children[(node.keys[b] & 0xFF) - 1] = child;
+        } else {
+            children[b] = child;
+        }
+    }
+
+    private static void addChild(Node node, int b, Node child) {
+        if (node.children == null) {
+            node.keys = new byte[4];
+            node.children = new Node[4];
+        } else if (node.childCount == node.children.length) {
+            grow(node);
+        }
+        Node[] children = node.children;
+        if (children.length <= 16) {
+            // keep the bytes sorted
+            int i = node.childCount;
+            while (i > 0 && (node.keys[i - 1] & 0xFF) > b) {
+                node.keys[i] = node.keys[i - 1];
+                children[i] = children[i - 1];
+                i--;
+            }
+            node.keys[i] = (byte) b;
+            children[i] = child;
+        } else if (children.length == 48) {
+            int slot = 0;
+            while (children[slot] != null) slot++;
+            children[slot] = child;
+            node.keys[b] = (byte) (slot + 1);
+        } else {
+            children[b] = child;
+        }
+        node.childCount++;
+    }
+
+    private static void removeChild(Node node, int b) {
+        Node[] children = node.children;
+        if (children.length <= 16) {
+            int i = 0;
+            while ((node.keys[i] & 0xFF) != b) i++;
+            for (; i + 1 < node.childCount; i++) {
+                node.keys[i] = node.keys[i + 1];
+                children[i] = children[i + 1];
+            }
+            children[i] = null;
+        } else if (children.length == 48) {
+            children[(node.keys[b] & 0xFF) - 1] = null;
+            node.keys[b] = 0;
+        } else {
+            children[b] = null;
+        }
+        node.childCount--;
+        if (node.childCount == 0) {
+            node.keys = null;
+            node.children = null;
+        } else if (children.length > 4 && node.childCount <= (children.length == 256 ? 36 : children.length / 4)) {
+            shrink(node);
+        }
+    }
+
+    /**
+     * Moves the children of a full node into the next larger node size.
+     */
+    private static void grow(Node node) {
+        int length = node.children.length;
+        if (length == 4) {
+            node.keys = Arrays.copyOf(node.keys, 16);
+            node.children = Arrays.copyOf(node.children, 16);
+        } else if (length == 16) {
+            byte[] index = new byte[256];
+            for (int i = 0; i < 16; i++) {
+                index[node.keys[i] & 0xFF] = (byte) (i + 1);
+            }
+            node.keys = index;
+            node.children = Arrays.copyOf(node.children, 48);
+        } else {
+            Node[] direct = new Node[256];
+            for (int b = 0; b < 256; b++) {
+                if (node.keys[b] != 0) direct[b] = node.children[(node.keys[b] & 0xFF) - 1];
+            }
+            node.keys = null;
+            node.children = direct;
+        }
+    }
+
+    /**
+     * Moves the children of a node into the next smaller node size, once they
+     * take up at most three quarters of it.
+     */
+    private static void shrink(Node node) {
+        int length = node.children.length;
+        if (length == 16) {
+            node.keys = Arrays.copyOf(node.keys, 4);
+            node.children = Arrays.copyOf(node.children, 4);
+            return;
+        }
+        int size = length == 48 ? 16 : 48;
+        byte[] keys = new byte[size == 16 ? 16 : 256];
+        Node[] children = new Node[size];
+        int count = 0;
+        for (int b = 0; b < 256; b++) {
+            Node child = length == 48 ? (node.keys[b] == 0 ? null : node.children[(node.keys[b] & 0xFF) - 1])
+                    : node.children[b];
+            if (child == null) continue;
+            if (size == 16) {
+                keys[count] = (byte) b;
+            } else {
+                keys[b] = (byte) (count + 1);
+            }
+            children[count++] = child;
+        }
+        node.keys = keys;
+        node.children = children;
+    }
+
+    /**
+     * Returns byte part of the encoding of c used by FrontCodedIndex.encode.
+     */
+    private static int encodedByte(char c, int part) {
+        if (c < 0x80) {
+            return c;
+        } else if (c < 0x800) {
+            return part == 0 ? 0xC0 | (c >> 6) : 0x80 | (c & 0x3F);
+        } else if (part == 0) {
+            return 0xE0 | (c >> 12);
+        }
+        return part == 1 ? 0x80 | ((c >> 6) & 0x3F) : 0x80 | (c & 0x3F);
+    }
+
+    private static int encodedLength(char c) {
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+}
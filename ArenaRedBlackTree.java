@@ -0,0 +1,507 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Red-Black Tree that stores its nodes in parallel arrays instead of node
+ * objects. A node is an index into the arrays: parent, left and right hold the
+ * indexes of the related nodes, one bit per node tells whether it is red, and
+ * values holds the value of the node at the same index. This saves the node
+ * object and its context array for every value, about 60 bytes per value, and
+ * nodes that are close in the arrays are close in memory, which helps searches.
+ *
+ * Index 0 is a sentinel that stands for every missing child and the parent of
+ * the root, it is always black. Slots of removed nodes are chained into a free
+ * list through the right array and are reused by later inserts.
+ *
+ * Insertion and removal follow the algorithms of Cormen, Leiserson, Rivest and
+ * Stein. Removing a node with two children moves its successor node into its
+ * place, so a node keeps its value as long as it is in the tree.
+ */
+public class ArenaRedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterface<T>, Iterable<T> {
+
+    private static final int NIL = 0; // the sentinel node
+    private static final int DEFAULT_CAPACITY = 16;
+
+    protected int[] parent;
+    protected int[] left;
+    protected int[] right;
+    protected long[] red; // bit i is set when node i is red
+    protected Object[] values;
+
+    protected int root = NIL;
+    protected int size = 0; // the number of values in the tree
+    protected int used = 1; // slots below this index were handed out, slot 0 is the sentinel
+    protected int freeList = NIL; // first slot of the chain of free slots
+    protected int modCount = 0; // number of structural changes, used by iterators to detect them
+
+    public ArenaRedBlackTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity number of values the tree can hold before its arrays grow
+     */
+    public ArenaRedBlackTree(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("Capacity cannot be negative: " + initialCapacity);
+        int capacity = initialCapacity + 1;
+        parent = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        red = new long[(capacity + 63) >>> 6];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Performs a regular binary search tree insert into the tree and restores
+     * the red-black tree properties afterwards.
+     * @param data to be added into this tree
+     * @return true if the value was inserted
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when data is already contained in the tree
+     */
+    @Override
+    public boolean insert(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        int above = NIL;
+        int current = root;
+        int compare = 0;
+        while (current != NIL) {
+            above = current;
+            compare = data.compareTo(value(current));
+            if (compare == 0) {
+                throw new IllegalArgumentException("This RedBlackTree already contains value " + data.toString());
+            }
+            current = compare < 0 ? left[current] : right[current];
+        }
+        int node = allocate(data);
+        parent[node] = above;
+        if (above == NIL) {
+            root = node;
+        } else if (compare < 0) {
+            left[above] = node;
+        } else {
+            right[above] = node;
+        }
+        size++;
+        modCount++;
+        enforceRBTreePropertiesAfterInsert(node);
+        return true;
+    }
+
+    /**
+     * Removes data from the tree and restores the red-black tree properties.
+     * @param data the value to remove
+     * @return true if the value was removed
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when data is not stored in the tree
+     */
+    @Override
+    public boolean remove(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        int node = findNode(data);
+        if (node == NIL) {
+            throw new IllegalArgumentException(
+                    "The following value is not in the tree and cannot be deleted: " + data.toString());
+        }
+        removeNode(node);
+        return true;
+    }
+
+    @Override
+    public T search(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("Word input is null.");
+        int node = findNode(data);
+        if (node == NIL) throw new IllegalArgumentException("Word does not exist in dictionary.");
+        return value(node);
+    }
+
+    @Override
+    public T find(Probe<? super T> probe) {
+        if (probe == null) throw new NullPointerException("Probe is null.");
+        int current = root;
+        int stepsLeft = maxHeight();
+        while (current != NIL) {
+            if (stepsLeft-- == 0) throw new ConcurrentModificationException("Tree is deeper than a red-black tree can be");
+            int compare = probe.compareTo(value(current));
+            if (compare == 0) {
+                return value(current);
+            }
+            current = compare < 0 ? left[current] : right[current];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(T data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        return findNode(data) != NIL;
+    }
+
+    /**
+     * Returns the values of the subtree whose root holds data in pre-order, or
+     * null when data is not in the tree.
+     */
+    @Override
+    public ArrayList<T> getSubtree(T data) {
+        int start = findNode(data);
+        if (start == NIL) {
+            return null;
+        }
+        ArrayList<T> subtree = new ArrayList<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            subtree.add(value(node));
+            if (right[node] != NIL) stack.push(right[node]);
+            if (left[node] != NIL) stack.push(left[node]);
+        }
+        return subtree;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes used by the arrays of this tree, not counting
+     * the values themselves, assuming 4 byte object references.
+     */
+    public long getFootprint() {
+        long capacity = values.length;
+        return capacity * (3 * Integer.BYTES + 4) + (long) red.length * Long.BYTES + 5 * 16;
+    }
+
+    /**
+     * Shrinks the arrays to the slots handed out so far. Free slots in the
+     * middle of the arrays are kept for later inserts.
+     */
+    public void trimToSize() {
+        resize(used);
+    }
+
+    /**
+     * Returns a fail-fast iterator over the values in increasing order.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = root == NIL ? NIL : leftmost(root);
+            private int lastReturned = NIL;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != NIL;
+            }
+
+            @Override
+            public T next() {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                if (next == NIL) throw new NoSuchElementException();
+                lastReturned = next;
+                next = findSuccessor(next);
+                return value(lastReturned);
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == NIL) throw new IllegalStateException();
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                // nodes keep their values when others are removed, so next stays valid
+                removeNode(lastReturned);
+                lastReturned = NIL;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (T value : this) {
+            if (sb.length() > 2) sb.append(", ");
+            sb.append(value);
+        }
+        return sb.append(" ]").toString();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods working on node indexes
+
+    @SuppressWarnings("unchecked")
+    private T value(int node) {
+        return (T) values[node];
+    }
+
+    private boolean isRed(int node) {
+        return (red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setRed(int node, boolean isRed) {
+        if (isRed) {
+            red[node >>> 6] |= 1L << node;
+        } else {
+            red[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    /**
+     * Helper method that returns an upper bound for the number of nodes on any
+     * path from the root, like RedBlackTree.maxHeight, so a reader racing with
+     * a writer cannot loop forever.
+     */
+    private int maxHeight() {
+        return 2 * (33 - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    private int findNode(T data) {
+        int current = root;
+        int stepsLeft = maxHeight();
+        while (current != NIL) {
+            if (stepsLeft-- == 0) throw new ConcurrentModificationException("Tree is deeper than a red-black tree can be");
+            int compare = data.compareTo(value(current));
+            if (compare == 0) {
+                return current;
+            }
+            current = compare < 0 ? left[current] : right[current];
+        }
+        return NIL;
+    }
+
+    private int leftmost(int node) {
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    private int findSuccessor(int node) {
+        if (right[node] != NIL) {
+            return leftmost(right[node]);
+        }
+        // go up until we leave a left subtree
+        int above = parent[node];
+        while (above != NIL && node == right[above]) {
+            node = above;
+            above = parent[above];
+        }
+        return above;
+    }
+
+    /**
+     * Hands out a slot for a new red node holding data, from the free list if
+     * possible and otherwise from the end of the arrays, which grow by half.
+     */
+    private int allocate(T data) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = right[node];
+        } else {
+            if (used == values.length) {
+                resize(Math.max(used + 1, used + (used >> 1)));
+            }
+            node = used++;
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        values[node] = data;
+        setRed(node, true);
+        return node;
+    }
+
+    private void free(int node) {
+        values[node] = null; // so the value can be garbage collected
+        setRed(node, false);
+        parent[node] = NIL;
+        left[node] = NIL;
+        right[node] = freeList;
+        freeList = node;
+    }
+
+    private void resize(int capacity) {
+        parent = Arrays.copyOf(parent, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    private void rotateLeft(int node) {
+        int child = right[node];
+        right[node] = left[child];
+        if (left[child] != NIL) parent[left[child]] = node;
+        replaceChild(node, child);
+        left[child] = node;
+        parent[node] = child;
+    }
+
+    private void rotateRight(int node) {
+        int child = left[node];
+        left[node] = right[child];
+        if (right[child] != NIL) parent[right[child]] = node;
+        replaceChild(node, child);
+        right[child] = node;
+        parent[node] = child;
+    }
+
+    /**
+     * Helper method that puts replacement where node is attached to its parent.
+     * The parent of replacement is set even when it is the sentinel, which the
+     * removal fix-up relies on.
+     */
+    private void replaceChild(int node, int replacement) {
+        int above = parent[node];
+        if (above == NIL) {
+            root = replacement;
+        } else if (node == left[above]) {
+            left[above] = replacement;
+        } else {
+            right[above] = replacement;
+        }
+        parent[replacement] = above;
+    }
+
+    private void enforceRBTreePropertiesAfterInsert(int node) {
+        while (isRed(parent[node])) {
+            int above = parent[node];
+            int grandparent = parent[above];
+            boolean aboveIsLeft = above == left[grandparent];
+            int aunt = aboveIsLeft ? right[grandparent] : left[grandparent];
+            if (isRed(aunt)) {
+                // red aunt: recolor and continue with the grandparent
+                setRed(above, false);
+                setRed(aunt, false);
+                setRed(grandparent, true);
+                node = grandparent;
+                continue;
+            }
+            if (aboveIsLeft) {
+                if (node == right[above]) {
+                    node = above;
+                    rotateLeft(node);
+                    above = parent[node];
+                }
+                setRed(above, false);
+                setRed(grandparent, true);
+                rotateRight(grandparent);
+            } else {
+                if (node == left[above]) {
+                    node = above;
+                    rotateRight(node);
+                    above = parent[node];
+                }
+                setRed(above, false);
+                setRed(grandparent, true);
+                rotateLeft(grandparent);
+            }
+        }
+        setRed(root, false);
+    }
+
+    private void removeNode(int node) {
+        // moved is the node whose position lost a node, it may be the sentinel
+        int moved;
+        boolean removedRed = isRed(node);
+        if (left[node] == NIL) {
+            moved = right[node];
+            replaceChild(node, moved);
+        } else if (right[node] == NIL) {
+            moved = left[node];
+            replaceChild(node, moved);
+        } else {
+            // the successor takes the place of the node
+            int successor = leftmost(right[node]);
+            removedRed = isRed(successor);
+            moved = right[successor];
+            if (parent[successor] == node) {
+                parent[moved] = successor;
+            } else {
+                replaceChild(successor, moved);
+                right[successor] = right[node];
+                parent[right[successor]] = successor;
+            }
+            replaceChild(node, successor);
+            left[successor] = left[node];
+            parent[left[successor]] = successor;
+            setRed(successor, isRed(node));
+        }
+        if (!removedRed) {
+            enforceRBTreePropertiesAfterRemove(moved);
+        }
+        parent[NIL] = NIL;
+        free(node);
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Resolves the missing black node on the paths through node, which may be
+     * the sentinel, by the same sibling cases RedBlackTree uses.
+     */
+    private void enforceRBTreePropertiesAfterRemove(int node) {
+        while (node != root && !isRed(node)) {
+            int above = parent[node];
+            if (node == left[above]) {
+                int sibling = right[above];
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(above, true);
+                    rotateLeft(above);
+                    sibling = right[above];
+                }
+                if (!isRed(left[sibling]) && !isRed(right[sibling])) {
+                    setRed(sibling, true);
+                    node = above;
+                    continue;
+                }
+                if (!isRed(right[sibling])) {
+                    setRed(left[sibling], false);
+                    setRed(sibling, true);
+                    rotateRight(sibling);
+                    sibling = right[above];
+                }
+                setRed(sibling, isRed(above));
+                setRed(above, false);
+                setRed(right[sibling], false);
+                rotateLeft(above);
+            } else {
+                int sibling = left[above];
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(above, true);
+                    rotateRight(above);
+                    sibling = left[above];
+                }
+                if (!isRed(left[sibling]) && !isRed(right[sibling])) {
+                    setRed(sibling, true);
+                    node = above;
+                    continue;
+                }
+                if (!isRed(left[sibling])) {
+                    setRed(right[sibling], false);
+                    setRed(sibling, true);
+                    rotateLeft(sibling);
+                    sibling = left[above];
+                }
+                setRed(sibling, isRed(above));
+                setRed(above, false);
+                setRed(left[sibling], false);
+                rotateRight(above);
+            }
+            node = root;
+        }
+        setRed(node, false);
+    }
+}
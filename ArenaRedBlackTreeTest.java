@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Inserts and removes random values in an ArenaRedBlackTree and a TreeSet, and
+ * checks after every change that both hold the same values, that the arrays
+ * form a valid red-black tree and that every slot is either in the tree or on
+ * the free list. Refilling a tree after removals must reuse the freed slots
+ * instead of growing the arrays.
+ */
+public class ArenaRedBlackTreeTest {
+
+    static boolean isRed(ArenaRedBlackTree<Integer> tree, int node) {
+        return (tree.red[node >>> 6] & (1L << node)) != 0;
+    }
+
+    // returns the black height of the subtree, throws when it breaks an invariant
+    static int check(ArenaRedBlackTree<Integer> tree, int node, int parent, Integer low, Integer high, int[] count) {
+        if (node == 0) {
+            return 1;
+        }
+        count[0]++;
+        if (tree.parent[node] != parent) {
+            throw new AssertionError("wrong parent of slot " + node);
+        }
+        Integer value = (Integer) tree.values[node];
+        if (value == null) {
+            throw new AssertionError("slot " + node + " in the tree holds no value");
+        }
+        if ((low != null && value <= low) || (high != null && value >= high)) {
+            throw new AssertionError(value + " is out of order");
+        }
+        if (isRed(tree, node) && isRed(tree, parent)) {
+            throw new AssertionError("red node " + value + " has a red parent");
+        }
+        int left = check(tree, tree.left[node], node, low, value, count);
+        int right = check(tree, tree.right[node], node, value, high, count);
+        if (left != right) {
+            throw new AssertionError("black heights of " + value + " differ: " + left + " and " + right);
+        }
+        return left + (isRed(tree, node) ? 0 : 1);
+    }
+
+    static void validate(ArenaRedBlackTree<Integer> tree, TreeSet<Integer> expected) {
+        if (isRed(tree, 0) || isRed(tree, tree.root)) {
+            throw new AssertionError("sentinel or root is red");
+        }
+        if (tree.root != 0 && tree.parent[tree.root] != 0) {
+            throw new AssertionError("root has a parent");
+        }
+        int[] count = new int[1];
+        check(tree, tree.root, 0, null, null, count);
+        if (count[0] != tree.size() || tree.size() != expected.size()) {
+            throw new AssertionError("size " + tree.size() + " with " + count[0] + " nodes instead of "
+                    + expected.size());
+        }
+        // every slot handed out is in the tree or on the free list, exactly once
+        int free = 0;
+        for (int slot = tree.freeList; slot != 0; slot = tree.right[slot]) {
+            if (tree.values[slot] != null || ++free > tree.used) {
+                throw new AssertionError("free list is broken at slot " + slot);
+            }
+        }
+        if (free + tree.size() != tree.used - 1) {
+            throw new AssertionError(free + " free slots and " + tree.size() + " nodes, but " + (tree.used - 1)
+                    + " slots handed out");
+        }
+        List<Integer> values = new ArrayList<>();
+        for (Integer value : tree) {
+            values.add(value);
+        }
+        if (!values.equals(new ArrayList<>(expected))) {
+            throw new AssertionError("values differ from the TreeSet");
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 13);
+        int changes = 0;
+        for (int round = 0; round < 300; round++) {
+            int range = 1 + random.nextInt(round < 150 ? 100 : 3000);
+            ArenaRedBlackTree<Integer> tree = new ArenaRedBlackTree<>(1 + random.nextInt(32));
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int step = random.nextInt(600); step > 0; step--) {
+                int value = random.nextInt(range);
+                if (expected.add(value)) {
+                    tree.insert(value);
+                } else {
+                    expected.remove(value);
+                    tree.remove(value);
+                }
+                validate(tree, expected);
+                changes++;
+            }
+
+            // emptying the tree and filling it again uses the freed slots only
+            int used = tree.used;
+            List<Integer> order = new ArrayList<>(expected);
+            Collections.shuffle(order, random);
+            for (Integer value : order) {
+                tree.remove(value);
+                expected.remove(value);
+            }
+            validate(tree, expected);
+            for (int i = 0; i < used - 1; i++) {
+                if (expected.add(i)) {
+                    tree.insert(i);
+                }
+            }
+            validate(tree, expected);
+            if (tree.used != used) {
+                throw new AssertionError("refilling grew the arrays from " + used + " to " + tree.used + " slots");
+            }
+
+            // removing through the iterator keeps the tree valid and the iteration going
+            Iterator<Integer> iterator = tree.iterator();
+            while (iterator.hasNext()) {
+                Integer value = iterator.next();
+                if (random.nextBoolean()) {
+                    iterator.remove();
+                    expected.remove(value);
+                    changes++;
+                }
+            }
+            validate(tree, expected);
+        }
+        System.out.println(changes + " changes kept the arena red-black tree valid");
+    }
+}
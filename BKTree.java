@@ -0,0 +1,256 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Burkhard-Keller tree for finding the keys closest to a misspelled word by
+ * Levenshtein distance. Every child of a node is stored under its distance to
+ * the node; since the distance is a metric, a search for keys within distance
+ * d of a query only has to follow the children whose distance lies within d of
+ * the distance between the query and the node, which skips most of the tree.
+ *
+ * Removing a key only marks its node as removed, the node still guides
+ * searches. removedCount tells when the tree should be built again.
+ */
+public class BKTree<V> {
+
+    /**
+     * A key with its value, and its children by distance in increasing order.
+     */
+    private static final class Node<V> {
+        final String key;
+        V value; // null when the key was removed
+        int[] distances;
+        Node<V>[] children;
+        int childCount;
+
+        Node(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        Node<V> child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (distances[i] == distance) return children[i];
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node<V> child) {
+            if (children == null) {
+                distances = new int[2];
+                children = newArray(2);
+            } else if (childCount == children.length) {
+                distances = Arrays.copyOf(distances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            int i = childCount++;
+            while (i > 0 && distances[i - 1] > distance) {
+                distances[i] = distances[i - 1];
+                children[i] = children[i - 1];
+                i--;
+            }
+            distances[i] = distance;
+            children[i] = child;
+        }
+
+        // arrays of a generic type can only be created without their type argument
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newArray(int length) {
+            return (Node<V>[]) new Node<?>[length];
+        }
+    }
+
+    /**
+     * A key found by a search with its distance to the query.
+     */
+    private static final class Match<V> {
+        final String key;
+        final V value;
+        final int distance;
+
+        Match(String key, V value, int distance) {
+            this.key = key;
+            this.value = value;
+            this.distance = distance;
+        }
+
+        // negative when this match is closer to the query than other, so it is kept longer
+        int compareRank(Match<V> other) {
+            if (distance != other.distance) return Integer.compare(distance, other.distance);
+            return key.compareTo(other.key);
+        }
+    }
+
+    private Node<V> root;
+    private int size = 0; // number of keys that are not removed
+    private int removedCount = 0; // number of nodes marked as removed
+
+    /**
+     * Adds key with its value, or replaces the value when key is already in the tree.
+     */
+    public void add(String key, V value) {
+        if (key == null || value == null) throw new NullPointerException("BKTree cannot store null references.");
+        if (root == null) {
+            root = new Node<>(key, value);
+            size++;
+            return;
+        }
+        Node<V> node = root;
+        while (true) {
+            int distance = distance(key, node.key);
+            if (distance == 0) {
+                if (node.value == null) {
+                    removedCount--;
+                    size++;
+                }
+                node.value = value;
+                return;
+            }
+            Node<V> child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node<>(key, value));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Marks key as removed.
+     * @return true when the key was in the tree
+     */
+    public boolean remove(String key) {
+        Node<V> node = root;
+        while (node != null) {
+            int distance = distance(key, node.key);
+            if (distance == 0) {
+                if (node.value == null) return false;
+                node.value = null;
+                size--;
+                removedCount++;
+                return true;
+            }
+            node = node.child(distance);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of removed keys whose nodes are still in the tree
+     */
+    public int removedCount() {
+        return removedCount;
+    }
+
+    /**
+     * Returns the values of up to limit keys within maxDistance of query,
+     * closest first and equally close keys in increasing order. When the
+     * search takes longer than budgetNanos it stops and returns the best keys
+     * found so far.
+     */
+    public List<V> search(String query, int maxDistance, int limit, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        // the worst of the best matches is on top, so it can be replaced
+        PriorityQueue<Match<V>> best = new PriorityQueue<>((a, b) -> b.compareRank(a));
+        ArrayDeque<Node<V>> pending = new ArrayDeque<>();
+        if (root != null && limit > 0) pending.push(root);
+        // the rows of the distance table, over the characters of the query
+        int[][] rows = { new int[query.length() + 1], new int[query.length() + 1] };
+        int visited = 0;
+        while (!pending.isEmpty()) {
+            if ((++visited & 63) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            Node<V> node = pending.pop();
+            // once limit keys are found, keys further away than the worst of them cannot be used
+            int radius = best.size() < limit ? maxDistance : Math.min(maxDistance, best.peek().distance);
+            // neither the node nor any child is within the radius when the distance is
+            // larger than the largest child distance plus the radius
+            int largestChild = node.childCount == 0 ? 0 : node.distances[node.childCount - 1];
+            int distance = distance(query, node.key, largestChild + radius, rows);
+            if (node.value != null && distance <= radius) {
+                Match<V> match = new Match<>(node.key, node.value, distance);
+                if (best.size() < limit) {
+                    best.add(match);
+                } else if (match.compareRank(best.peek()) < 0) {
+                    best.poll();
+                    best.add(match);
+                }
+                radius = best.size() < limit ? maxDistance : Math.min(maxDistance, best.peek().distance);
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.distances[i] - distance) <= radius) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        List<Match<V>> matches = new ArrayList<>(best);
+        matches.sort(Match::compareRank);
+        List<V> values = new ArrayList<>(matches.size());
+        for (Match<V> match : matches) {
+            values.add(match.value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the Levenshtein distance between a and b: the smallest number of
+     * characters to insert, delete or replace to turn a into b.
+     */
+    public static int distance(CharSequence a, CharSequence b) {
+        int[][] rows = { new int[a.length() + 1], new int[a.length() + 1] };
+        return distance(a, b, Integer.MAX_VALUE - 1, rows);
+    }
+
+    /**
+     * Returns the Levenshtein distance between a and b when it is at most
+     * limit, and otherwise some number larger than limit.
+     */
+    static int distance(CharSequence a, CharSequence b, int limit) {
+        int[][] rows = { new int[a.length() + 1], new int[a.length() + 1] };
+        return distance(a, b, limit, rows);
+    }
+
+    /**
+     * Returns the Levenshtein distance between query and key when it is at
+     * most limit, and otherwise some number larger than limit. The two rows
+     * of the distance table must hold query.length() + 1 numbers each.
+     */
+    private static int distance(CharSequence query, CharSequence key, int limit, int[][] rows) {
+        int columns = query.length();
+        if (Math.abs(columns - key.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= columns; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= key.length(); i++) {
+            current[0] = i;
+            char c = key.charAt(i - 1);
+            int smallest = i;
+            for (int j = 1; j <= columns; j++) {
+                int replace = previous[j - 1] + (c == query.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+                smallest = Math.min(smallest, current[j]);
+            }
+            if (smallest > limit) {
+                // the numbers of a row never get smaller in the rows below
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[columns];
+    }
+}
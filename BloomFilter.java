@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over strings: mightContain never returns false for a string
+ * that was added, and returns true for a string that was not added with about
+ * the false positive rate the filter was created with, as long as no more
+ * strings than its capacity were added. Any CharSequence holding the same
+ * characters as a string counts as that string, so keys can be checked
+ * without creating a String for them.
+ *
+ * Strings cannot be removed from a Bloom filter. The filter counts removals
+ * reported with recordRemoval and needsRebuild tells when so many strings
+ * were removed, or so many added past the capacity, that the filter should be
+ * built again from the current set of strings.
+ *
+ * Bits are set atomically, so strings may be added while other threads call
+ * mightContain.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final double falsePositiveRate;
+    private final double rebuildThreshold;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+
+    /**
+     * @param capacity number of strings the filter is sized for
+     * @param falsePositiveRate the wanted rate of false positives, between 0 and 1
+     * @param rebuildThreshold fraction of removed strings at which a rebuild is needed
+     */
+    public BloomFilter(int capacity, double falsePositiveRate, double rebuildThreshold) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        if (rebuildThreshold <= 0) {
+            throw new IllegalArgumentException("Rebuild threshold must be positive: " + rebuildThreshold);
+        }
+        this.capacity = Math.max(1, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildThreshold = rebuildThreshold;
+        // optimal number of bits and hash functions for the capacity and rate
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bitCount = Math.max(64, (optimalBits + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * ln2));
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, bitCount / 64));
+    }
+
+    public void add(CharSequence key) {
+        long hash = hash(key);
+        long step = (hash >>> 32) | 1; // odd, so all positions can be reached
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = bits.get(index);
+            while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask)) {
+                word = bits.get(index);
+            }
+        }
+        added.increment();
+    }
+
+    /**
+     * @return false when key was certainly never added, true when it may have been
+     */
+    public boolean mightContain(CharSequence key) {
+        long hash = hash(key);
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a string that was removed from the set the filter describes. It
+     * keeps testing as present until the filter is rebuilt.
+     */
+    public void recordRemoval() {
+        removed.increment();
+    }
+
+    /**
+     * @return true when removed strings or strings added past the capacity
+     *      make the filter less useful than a new one would be
+     */
+    public boolean needsRebuild() {
+        long addedCount = added.sum();
+        return addedCount > capacity || removed.sum() > rebuildThreshold * Math.max(1, addedCount);
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public double getRebuildThreshold() {
+        return rebuildThreshold;
+    }
+
+    /**
+     * @return the false positive rate expected from the number of strings added so far
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * added.sum() / bitCount), hashCount);
+    }
+
+    public String getStatisticsString() {
+        return String.format("Bloom filter: %d bits, %d hashes, %d added, %d removed, expected false positive rate %.4f%%",
+                bitCount, hashCount, added.sum(), removed.sum(), 100 * getExpectedFalsePositiveRate());
+    }
+
+    /**
+     * 64 bit hash of the characters of key, mixed so that similar strings end
+     * up far apart.
+     */
+    private static long hash(CharSequence key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
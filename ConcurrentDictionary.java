@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe wrapper around a RedBlackTreeInterface for read-mostly use: many
+ * threads looking up words while an occasional writer adds or removes them.
+ *
+ * Lookups first run without taking any lock, as a StampedLock optimistic read.
+ * If a write happened in the meantime the result is thrown away and the lookup
+ * is repeated while holding the read lock. Writes are serialized by the write
+ * lock. The wrapped tree must not be used directly while other threads use
+ * this wrapper.
+ */
+public class ConcurrentDictionary<T extends Comparable<T>> implements RedBlackTreeInterface<T> {
+
+    /**
+     * An operation on the wrapped tree that may throw a checked exception.
+     */
+    public interface Operation<R, E extends Exception> {
+        R run() throws E;
+    }
+
+    private final RedBlackTreeInterface<T> tree;
+    private final StampedLock lock = new StampedLock();
+    private long writeCount = 0; // number of completed writes, guarded by the lock
+
+    public ConcurrentDictionary(RedBlackTreeInterface<T> tree) {
+        if (tree == null) throw new NullPointerException("Wrapped tree cannot be null.");
+        this.tree = tree;
+    }
+
+    /**
+     * Searches the tree for a value equal to data, without locking unless a
+     * write interferes with the search.
+     * @return the value stored in the tree
+     * @throws IllegalArgumentException when no such value is stored
+     */
+    @Override
+    public T search(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("Word input is null.");
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = tree.search(data);
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                // a racing writer can make the search fail in any way, the exception
+                // only counts if no write happened
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.search(data);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Searches the tree for the value the probe is equal to, without locking
+     * unless a write interferes with the search.
+     * @return the value stored in the tree, or null when there is none
+     */
+    @Override
+    public T find(Probe<? super T> probe) {
+        if (probe == null) throw new NullPointerException("Probe is null.");
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = tree.find(probe);
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.find(probe);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks whether the tree contains data, without locking unless a write
+     * interferes with the search.
+     */
+    @Override
+    public boolean contains(T data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean result = tree.contains(data);
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.contains(data);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size();
+        if (lock.validate(stamp)) return size;
+        stamp = lock.readLock();
+        try {
+            return tree.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public ArrayList<T> getSubtree(T data) {
+        return read(() -> tree.getSubtree(data));
+    }
+
+    @Override
+    public boolean insert(T data) throws NullPointerException, IllegalArgumentException {
+        return write(() -> tree.insert(data));
+    }
+
+    @Override
+    public boolean remove(T data) throws NullPointerException, IllegalArgumentException {
+        return write(() -> tree.remove(data));
+    }
+
+    /**
+     * Runs an operation that reads the wrapped tree while holding the read lock,
+     * for reads that are too long to retry, like range scans or statistics.
+     */
+    public <R, E extends Exception> R read(Operation<R, E> operation) throws E {
+        long stamp = lock.readLock();
+        try {
+            return operation.run();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs an operation that modifies the wrapped tree while holding the write lock.
+     */
+    public <R, E extends Exception> R write(Operation<R, E> operation) throws E {
+        long stamp = lock.writeLock();
+        try {
+            return operation.run();
+        } finally {
+            writeCount++;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of writes completed so far. Must be called from an
+     * operation run by read or write, to tell whether the tree may have
+     * changed between two operations.
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how lookup throughput of a ConcurrentDictionary scales with the
+ * number of reader threads, while one writer thread keeps adding and removing
+ * a word. Prints one line per thread count: threads, lookups per second and
+ * the number of writes completed.
+ *
+ * Usage: java ConcurrentDictionaryBenchmark [words] [seconds per run] [max threads]
+ */
+public class ConcurrentDictionaryBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : 2 * Runtime.getRuntime().availableProcessors();
+
+        RedBlackTree<Word> tree = new RedBlackTree<>();
+        List<Word> sorted = new ArrayList<>(words);
+        for (int i = 0; i < words; i++) {
+            sorted.add(word(i));
+        }
+        tree.bulkLoad(sorted);
+        ConcurrentDictionary<Word> dictionary = new ConcurrentDictionary<>(tree);
+        // probes are created up front so the readers measure lookups, not formatting
+        Word[] probes = sorted.toArray(new Word[0]);
+
+        System.out.println("threads,lookupsPerSecond,writes");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(dictionary, probes, threads, seconds);
+        }
+    }
+
+    private static void run(ConcurrentDictionary<Word> dictionary, Word[] probes, int threads, double seconds)
+            throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder lookups = new LongAdder();
+        LongAdder writes = new LongAdder();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while (running.get()) {
+                    dictionary.contains(probes[random.nextInt(probes.length)]);
+                    done++;
+                }
+                lookups.add(done);
+            }));
+        }
+        Thread writer = new Thread(() -> {
+            Word extra = word(probes.length);
+            while (running.get()) {
+                dictionary.insert(extra);
+                dictionary.remove(extra);
+                writes.add(2);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        workers.forEach(Thread::start);
+        writer.start();
+        long start = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        writer.join();
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d,%.0f,%d%n", threads, lookups.sum() / elapsed, writes.sum());
+    }
+
+    private static Word word(int i) {
+        Word word = new Word();
+        word.setWord(String.format("w%09d", i));
+        return word;
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark suite for the hot paths of the dictionary, to find regressions
+ * between versions: RedBlackTree insert, remove, search and contains with keys
+ * inserted in random and in sorted order, loading a dictionary file with
+ * WordReader and SeparateWords, and the latency of SearchBackend.findDefinition
+ * for found and missing words and of spelling suggestions.
+ *
+ * Every benchmark runs warmup iterations, whose results are dropped so the
+ * compiler can optimize the code first, and then measured iterations. The
+ * state of an iteration, like a tree to remove keys from, is prepared before
+ * the timer starts. For each iteration the suite also reads the bytes the
+ * thread allocated and the collections of every garbage collector, which
+ * shows when a change makes an operation allocate.
+ *
+ * Results are written as one CSV line per benchmark and size, with the mean
+ * time per operation and the half width of its 99% confidence interval over
+ * the iterations. Latency benchmarks time every call and add its 50th and
+ * 99th percentile. Every line carries the time of the run and the Java
+ * version, so the lines of many runs can be appended to one file and compared.
+ * The words are generated from their index, so every run measures the same
+ * keys. Sizes of 10 million keys need a heap of about 6 GB (-Xmx6g).
+ *
+ * Usage: java DictionaryBenchmarks [--sizes 10000,1000000,10000000]
+ *        [--filter regex] [--warmup 2] [--iterations 5] [--out results.csv]
+ */
+public class DictionaryBenchmarks {
+
+    // the suggestion indexes hold many entries per word, larger dictionaries are skipped
+    private static final int MAX_SUGGESTION_SIZE = 1_000_000;
+    // the number of lines of the generated file for the loader benchmarks
+    private static final int MAX_LOAD_LINES = 1_000_000;
+    private static final int LOOKUPS = 1_000_000;
+    private static final int SAMPLES = 100_000;
+    private static final int SUGGESTIONS = 1_000;
+
+    // results of the measured operations, so the compiler cannot remove them
+    private static volatile long sink;
+
+    /**
+     * One benchmark for one size. setup prepares an iteration and is not
+     * timed, run performs the operations and returns how many it performed.
+     * A latency benchmark stores the nanoseconds of every operation in samples.
+     */
+    private abstract static class Benchmark {
+        final String name;
+        final String order;
+        final int size;
+        long[] samples;
+
+        Benchmark(String name, String order, int size) {
+            this.name = name;
+            this.order = order;
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+        }
+
+        abstract long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = { 10_000, 1_000_000, 10_000_000 };
+        Pattern filter = Pattern.compile(".*");
+        int warmup = 2;
+        int iterations = 5;
+        String out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--filter":
+                    filter = Pattern.compile(args[i + 1]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        boolean header = out == null || !new File(out).exists();
+        try (PrintWriter writer = out == null ? new PrintWriter(System.out, true)
+                : new PrintWriter(new FileWriter(out, true), true)) {
+            if (header) {
+                writer.println("timestamp,java,benchmark,order,size,iterations,nanosPerOp,error99,p50,p99,"
+                        + "bytesPerOp,gcCount,gcMillis");
+            }
+            String run = Instant.now().toString() + "," + System.getProperty("java.version");
+            for (int size : sizes) {
+                for (Benchmark benchmark : benchmarks(size)) {
+                    if (filter.matcher(benchmark.name).find()) {
+                        String result = measure(benchmark, warmup, iterations);
+                        writer.println(run + "," + result);
+                        if (out != null) System.out.println(result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all benchmarks for one size, the words are only generated once
+     * one of them runs.
+     */
+    private static List<Benchmark> benchmarks(int size) throws IOException {
+        List<Benchmark> list = new ArrayList<>();
+        Words words = new Words(size);
+        for (String order : new String[] { "random", "sorted" }) {
+            list.add(new Benchmark("RedBlackTree.insert", order, size) {
+                RedBlackTree<Word> tree;
+
+                void setup() {
+                    tree = null; // the tree of the last iteration can be collected first
+                    tree = new RedBlackTree<>();
+                }
+
+                long run() {
+                    for (Word word : words.inOrder(order)) {
+                        tree.insert(word);
+                    }
+                    return size;
+                }
+            });
+            list.add(new Benchmark("RedBlackTree.remove", order, size) {
+                RedBlackTree<Word> tree;
+
+                void setup() {
+                    tree = null;
+                    tree = words.tree();
+                }
+
+                long run() {
+                    for (Word word : words.inOrder(order)) {
+                        tree.remove(word);
+                    }
+                    return size;
+                }
+            });
+        }
+        list.add(new Benchmark("RedBlackTree.search", "random", size) {
+            void setup() {
+                words.probes();
+                words.sharedTree();
+            }
+
+            long run() {
+                RedBlackTree<Word> tree = words.sharedTree();
+                Word[] probes = words.probes();
+                long found = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    found += tree.search(probes[i & (probes.length - 1)]).getDefinition().length();
+                }
+                sink = found;
+                return LOOKUPS;
+            }
+        });
+        list.add(new Benchmark("RedBlackTree.contains", "random", size) {
+            void setup() {
+                words.probes();
+                words.sharedTree();
+            }
+
+            long run() {
+                RedBlackTree<Word> tree = words.sharedTree();
+                Word[] probes = words.probes();
+                long found = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    if (tree.contains(probes[i & (probes.length - 1)])) found++;
+                }
+                sink = found;
+                return LOOKUPS;
+            }
+        });
+        int lines = Math.min(size, MAX_LOAD_LINES);
+        list.add(new Benchmark("WordReader.streamWordsFromFile", "file", lines) {
+            void setup() throws IOException {
+                words.file(lines);
+            }
+
+            long run() throws IOException {
+                long[] count = new long[1];
+                new WordReader().streamWordsFromFile(words.file(lines).getPath(), word -> count[0]++);
+                sink = count[0];
+                return count[0];
+            }
+        });
+        list.add(new Benchmark("SeparateWords.readFile", "file", lines) {
+            void setup() throws IOException {
+                words.file(lines);
+            }
+
+            long run() throws IOException {
+                SeparateWords separate = new SeparateWords();
+                separate.readFile(words.file(lines).getPath());
+                sink = separate.numberOfWords();
+                return separate.numberOfWords();
+            }
+        });
+        list.add(new Benchmark("SearchBackend.findDefinition.hit", "random", size) {
+            void setup() {
+                words.backend();
+            }
+
+            long run() throws IOException {
+                SearchBackend backend = words.backend();
+                return sample(this, i -> backend.findDefinition(words.spelling(words.probeIndex(i)), null));
+            }
+        });
+        list.add(new Benchmark("SearchBackend.findDefinition.miss", "random", size) {
+            void setup() {
+                words.backend();
+            }
+
+            long run() throws IOException {
+                SearchBackend backend = words.backend();
+                // one character more than any word, the suggestions list words with the same first letters
+                return sample(this, i -> backend.findDefinition(words.spelling(words.probeIndex(i)) + "s", null));
+            }
+        });
+        if (size <= MAX_SUGGESTION_SIZE) {
+            list.add(new Benchmark("SearchBackend.suggestWords.bkTree", "random", size) {
+                void setup() {
+                    if (words.backend().suggestionTree == null) words.backend().enableSpellingSuggestions(2, 1_000_000);
+                }
+
+                long run() {
+                    SearchBackend backend = words.backend();
+                    return sample(this, i -> backend.suggestWords(words.misspelling(i)));
+                }
+            });
+            list.add(new Benchmark("SearchBackend.suggestWords.deletionIndex", "random", size) {
+                // suggestWords uses the deletion index instead of the suggestion tree once it is enabled
+                void setup() {
+                    SearchBackend backend = words.backend();
+                    if (backend.deletionIndex == null) backend.enableDeletionIndex(2, SymSpellIndex.DEFAULT_PREFIX_LENGTH);
+                }
+
+                long run() {
+                    SearchBackend backend = words.backend();
+                    return sample(this, i -> backend.suggestWords(words.misspelling(i)));
+                }
+            });
+        }
+        return list;
+    }
+
+    private interface Call {
+        Object call(int index) throws IOException;
+    }
+
+    /**
+     * Helper method that times each call of a latency benchmark on its own.
+     */
+    private static long sample(Benchmark benchmark, Call call) {
+        int count = benchmark.name.startsWith("SearchBackend.suggestWords") ? SUGGESTIONS : SAMPLES;
+        long[] samples = new long[count];
+        long total = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                Object result = call.call(i);
+                samples[i] = System.nanoTime() - start;
+                total += result.hashCode();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        sink = total;
+        benchmark.samples = samples;
+        return count;
+    }
+
+    /**
+     * Runs the warmup and measured iterations of a benchmark and returns its CSV columns.
+     */
+    private static String measure(Benchmark benchmark, int warmup, int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < warmup; i++) {
+            benchmark.setup();
+            benchmark.run();
+        }
+        double[] nanosPerOp = new double[iterations];
+        long operations = 0;
+        long bytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        List<Long> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            benchmark.setup();
+            long[] gcBefore = gcTotals();
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long performed = benchmark.run();
+            long elapsed = System.nanoTime() - start;
+            bytes += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            long[] gcAfter = gcTotals();
+            gcCount += gcAfter[0] - gcBefore[0];
+            gcMillis += gcAfter[1] - gcBefore[1];
+            operations += performed;
+            nanosPerOp[i] = (double) elapsed / performed;
+            if (benchmark.samples != null) {
+                for (long sample : benchmark.samples) samples.add(sample);
+                benchmark.samples = null;
+            }
+        }
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        double variance = Arrays.stream(nanosPerOp).map(x -> (x - mean) * (x - mean)).sum()
+                / Math.max(1, iterations - 1);
+        double error = 2.576 * Math.sqrt(variance / iterations);
+        String p50 = "";
+        String p99 = "";
+        if (!samples.isEmpty()) {
+            Collections.sort(samples);
+            p50 = Long.toString(samples.get(samples.size() / 2));
+            p99 = Long.toString(samples.get((int) (samples.size() * 0.99)));
+        }
+        return String.format("%s,%s,%d,%d,%.1f,%.1f,%s,%s,%.1f,%d,%d", benchmark.name, benchmark.order,
+                benchmark.size, iterations, mean, error, p50, p99, (double) bytes / operations, gcCount, gcMillis);
+    }
+
+    /**
+     * Helper method that returns the number of collections and their total
+     * milliseconds over all garbage collectors.
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] { count, millis };
+    }
+
+    /**
+     * The words of one size, created when a benchmark first needs them and
+     * shared by the benchmarks of that size.
+     */
+    private static class Words {
+        private final int size;
+        private List<Word> random;
+        private List<Word> sorted;
+        private RedBlackTree<Word> tree;
+        private Word[] probes;
+        private int[] probeIndexes;
+        private SearchBackend backend;
+        private File file;
+
+        Words(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Returns the spelling of word index: 7 letters made from the index
+         * multiplied with an odd number, which is a different number for every
+         * index, so the words are distinct and spread over the alphabet.
+         */
+        String spelling(int index) {
+            long value = (index * 2654435761L) & 0xFFFFFFFFL;
+            char[] letters = new char[7];
+            for (int i = letters.length - 1; i >= 0; i--) {
+                letters[i] = (char) ('a' + value % 26);
+                value /= 26;
+            }
+            return new String(letters);
+        }
+
+        // a word of the dictionary with its third letter replaced
+        String misspelling(int i) {
+            char[] letters = spelling(probeIndex(i)).toCharArray();
+            letters[2] = letters[2] == 'z' ? 'a' : (char) (letters[2] + 1);
+            return new String(letters);
+        }
+
+        List<Word> inOrder(String order) {
+            if (random == null) {
+                random = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Word word = new Word();
+                    word.setWord(spelling(i));
+                    word.setPart("noun");
+                    word.setDefinition("definition of " + word.getWord());
+                    random.add(word);
+                }
+                sorted = new ArrayList<>(random);
+                sorted.sort(null);
+                Collections.shuffle(random, new Random(42));
+            }
+            return order.equals("sorted") ? sorted : random;
+        }
+
+        // a new balanced tree with all words
+        RedBlackTree<Word> tree() {
+            RedBlackTree<Word> tree = new RedBlackTree<>();
+            tree.buildFromSorted(inOrder("sorted").iterator(), size);
+            return tree;
+        }
+
+        RedBlackTree<Word> sharedTree() {
+            if (tree == null) tree = tree();
+            return tree;
+        }
+
+        // the index of the word probe i looks up
+        int probeIndex(int i) {
+            if (probeIndexes == null) {
+                Random random = new Random(7);
+                probeIndexes = new int[4096];
+                for (int j = 0; j < probeIndexes.length; j++) {
+                    probeIndexes[j] = random.nextInt(size);
+                }
+            }
+            return probeIndexes[i & (probeIndexes.length - 1)];
+        }
+
+        // new Words with the spellings of 4096 random words of the dictionary
+        Word[] probes() {
+            if (probes == null) {
+                probes = new Word[4096];
+                for (int i = 0; i < probes.length; i++) {
+                    probes[i] = new Word();
+                    probes[i].setWord(spelling(probeIndex(i)));
+                }
+            }
+            return probes;
+        }
+
+        SearchBackend backend() {
+            if (backend == null) {
+                backend = new SearchBackend(sharedTree(), new WordReader());
+            }
+            return backend;
+        }
+
+        // a dictionary file with the first lines words, deleted when the program ends
+        File file(int lines) throws IOException {
+            if (file == null) {
+                file = File.createTempFile("dictionary", ".csv");
+                file.deleteOnExit();
+                try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                    for (int i = 0; i < lines; i++) {
+                        String spelling = spelling(i);
+                        writer.println(spelling + "/noun/definition of " + spelling + ",");
+                    }
+                }
+            }
+            return file;
+        }
+    }
+}
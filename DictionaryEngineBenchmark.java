@@ -0,0 +1,111 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the dictionary engines SearchBackend can be built on: the heap used
+ * per word, the time of an exact lookup with a WordProbe and the time of
+ * listing up to 10 completions of a two letter prefix. The words come from a
+ * dictionary file in the format WordReader reads, or are random when no file
+ * is given. Prints one line per engine: engine, words, bytes per word, the
+ * bytes per word the engine reports itself, lookup nanoseconds and completion
+ * nanoseconds. Only ArenaRedBlackTree reports its own bytes, and it cannot
+ * list completions, so the other engines leave the footprint column empty and
+ * ArenaRedBlackTree the completion column.
+ *
+ * Usage: java DictionaryEngineBenchmark [file | number of random words]
+ */
+public class DictionaryEngineBenchmark {
+
+    public static void main(String[] args) throws FileNotFoundException {
+        List<Word> words = new ArrayList<>();
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            new WordReader().streamWordsFromFile(args[0], words::add);
+        } else {
+            int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+            Random random = new Random(42);
+            HashSet<String> seen = new HashSet<>();
+            while (words.size() < count) {
+                StringBuilder spelling = new StringBuilder();
+                int length = 3 + random.nextInt(10);
+                for (int i = 0; i < length; i++) {
+                    spelling.append((char) ('a' + random.nextInt(26)));
+                }
+                if (seen.add(spelling.toString())) {
+                    Word word = new Word();
+                    word.setWord(spelling.toString());
+                    words.add(word);
+                }
+            }
+        }
+
+        System.out.println("engine,words,bytesPerWord,footprintPerWord,lookupNanos,completionNanos");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the compiler
+            boolean print = round == 1;
+            measure("RedBlackTree", RedBlackTree::new, words, print);
+            measure("AdaptiveRadixTree", AdaptiveRadixTree::new, words, print);
+            measure("ArenaRedBlackTree", ArenaRedBlackTree::new, words, print);
+        }
+    }
+
+    private static void measure(String name, Supplier<RedBlackTreeInterface<Word>> engine, List<Word> words,
+            boolean print) {
+        Runtime runtime = Runtime.getRuntime();
+        long before = usedMemory(runtime);
+        RedBlackTreeInterface<Word> tree = engine.get();
+        for (Word word : words) {
+            tree.insert(word);
+        }
+        long bytes = usedMemory(runtime) - before;
+        String footprint = "";
+        if (tree instanceof ArenaRedBlackTree) {
+            footprint = String.format("%.1f", (double) ((ArenaRedBlackTree<Word>) tree).getFootprint() / words.size());
+        }
+
+        String[] spellings = new String[4096];
+        Random random = new Random(7);
+        for (int i = 0; i < spellings.length; i++) {
+            spellings[i] = words.get(random.nextInt(words.size())).getWord();
+        }
+        int lookups = 2_000_000;
+        WordProbe probe = new WordProbe();
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (tree.find(probe.set(spellings[i & 4095])) != null) found++;
+        }
+        double lookupNanos = (System.nanoTime() - start) / (double) lookups;
+
+        String completionNanos = "";
+        if (tree instanceof OrderedTreeInterface) {
+            OrderedTreeInterface<Word> ordered = (OrderedTreeInterface<Word>) tree;
+            int completions = 200_000;
+            long listed = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < completions; i++) {
+                String prefix = spellings[i & 4095].substring(0, 2);
+                String key = Word.normalize(prefix);
+                listed += ordered.rangeFrom(Word.prefixRangeStart(prefix), w -> w.getKey().startsWith(key), 10).size();
+            }
+            completionNanos = String.format("%.0f", (System.nanoTime() - start) / (double) completions);
+            if (listed == 0) throw new IllegalStateException(name + " did not list any completions");
+        }
+
+        if (found != lookups) throw new IllegalStateException(name + " did not find the words");
+        if (print) {
+            System.out.printf("%s,%d,%.1f,%s,%.0f,%s%n", name, tree.size(), (double) bytes / words.size(), footprint,
+                    lookupNanos, completionNanos);
+        }
+    }
+
+    private static long usedMemory(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,152 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the dictionary, so a recording shows loads,
+ * slow lookups, suggestions and bulk changes next to the garbage collections
+ * and allocations of the same moment. They are recorded with
+ *
+ *     java -XX:StartFlightRecording:filename=dictionary.jfr ...
+ *
+ * and listed with "jfr print --categories Dictionary dictionary.jfr". Without a
+ * recording an event costs a check of whether it is enabled. Lookups, which
+ * must not allocate, only create their event while it is enabled.
+ */
+public final class DictionaryEvents {
+
+    private DictionaryEvents() {
+    }
+
+    /**
+     * One phase of loading words from a file or a snapshot: parsing, sorting,
+     * merging or building the tree. A parallel load records a parse and a sort
+     * phase for every chunk of the file.
+     */
+    @Name("dictionary.LoadPhase")
+    @Label("Dictionary Load Phase")
+    @Category("Dictionary")
+    public static class LoadPhase extends Event {
+        @Label("Phase")
+        public String phase;
+
+        @Label("File")
+        public String file;
+
+        @Label("Word Count")
+        public long wordCount;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytesRead;
+
+        @Label("Threads")
+        public int threads;
+
+        /**
+         * Ends the phase and records it with its fields, when Flight Recorder
+         * is recording this event.
+         */
+        public void commit(String phase, String file, long wordCount, long bytesRead, int threads) {
+            if (shouldCommit()) {
+                this.phase = phase;
+                this.file = file;
+                this.wordCount = wordCount;
+                this.bytesRead = bytesRead;
+                this.threads = threads;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A lookup of a single word that took longer than the threshold, 1 ms
+     * unless the recording settings give another one.
+     */
+    @Name("dictionary.SlowLookup")
+    @Label("Slow Dictionary Lookup")
+    @Category("Dictionary")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class SlowLookup extends Event {
+        private static final EventType TYPE = EventType.getEventType(SlowLookup.class);
+
+        @Label("Word")
+        public String word;
+
+        @Label("Found")
+        public boolean found;
+
+        @Label("Cached")
+        @Description("Whether the word was found in the lookup cache")
+        public boolean cached;
+
+        @Label("Dictionary Size")
+        public int dictionarySize;
+
+        /**
+         * Returns a started event while a recording has this event enabled,
+         * otherwise null without creating an object.
+         */
+        public static SlowLookup beginIfEnabled() {
+            if (!TYPE.isEnabled()) {
+                return null;
+            }
+            SlowLookup event = new SlowLookup();
+            event.begin();
+            return event;
+        }
+    }
+
+    /**
+     * The spelling suggestions for one misspelled word.
+     */
+    @Name("dictionary.Suggestion")
+    @Label("Spelling Suggestion")
+    @Category("Dictionary")
+    public static class Suggestion extends Event {
+        @Label("Word")
+        public String word;
+
+        @Label("Source")
+        @Description("Deletion index, BK-tree or prefix")
+        public String source;
+
+        @Label("Suggestion Count")
+        public int suggestionCount;
+
+        @Label("Dictionary Size")
+        public int dictionarySize;
+    }
+
+    /**
+     * A change of many values of a red-black tree at once.
+     */
+    @Name("dictionary.BulkMutation")
+    @Label("Tree Bulk Mutation")
+    @Category("Dictionary")
+    public static class BulkMutation extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Values Given")
+        public int valueCount;
+
+        @Label("Values Changed")
+        @Description("Values inserted or removed, values already in the tree or missing from it are not counted")
+        public int changedCount;
+
+        @Label("Tree Size")
+        public int treeSize;
+
+        @Label("Black Height")
+        @Description("Black nodes on every path from the root, the height of the tree is at most twice this")
+        public int blackHeight;
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Latency histograms of the operations of a SearchBackend and the counters of
+ * its red-black tree, exported through JMX. Timing an operation is
+ *
+ *     long start = metrics.start();
+ *     ...
+ *     metrics.record(DictionaryMetrics.Operation.FIND, start);
+ *
+ * which only reads the clock while the metrics are enabled. The tree counters
+ * are handed to the tree when the metrics are enabled and taken back when they
+ * are disabled, so a tree without them does no counting at all.
+ */
+public class DictionaryMetrics implements DictionaryMetricsMXBean {
+
+    /**
+     * The timed operations of the dictionary.
+     */
+    public enum Operation {
+        FIND, LOAD, ADD, REMOVE, SUGGEST
+    }
+
+    private static final long DISABLED = Long.MIN_VALUE; // returned by start while disabled
+
+    private volatile boolean enabled = false;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final TreeMetrics treeMetrics = new TreeMetrics();
+    private final IntSupplier wordCount;
+    private final IntSupplier blackHeight;
+    private final Consumer<TreeMetrics> attach;
+
+    /**
+     * @param wordCount returns the number of words in the dictionary
+     * @param blackHeight returns the black height of the tree, it follows one path
+     * @param attach sets the counters of the tree, or removes them when given null
+     */
+    public DictionaryMetrics(IntSupplier wordCount, IntSupplier blackHeight, Consumer<TreeMetrics> attach) {
+        this.wordCount = wordCount;
+        this.blackHeight = blackHeight;
+        this.attach = attach;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public TreeMetrics getTreeMetrics() {
+        return treeMetrics;
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * @return the time an operation starts, to pass to record
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Counts the time since start for operation, unless the metrics were
+     * disabled when the operation started.
+     */
+    public void record(Operation operation, long start) {
+        if (start != DISABLED) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled != enabled) {
+            attach.accept(enabled ? treeMetrics : null);
+            this.enabled = enabled;
+        }
+    }
+
+    @Override
+    public int getWordCount() {
+        return wordCount.getAsInt();
+    }
+
+    @Override
+    public int getBlackHeight() {
+        return blackHeight.getAsInt();
+    }
+
+    @Override
+    public double getTreeHeightBound() {
+        return TreeMetrics.heightBound(getWordCount());
+    }
+
+    @Override
+    public long getSearches() {
+        return treeMetrics.getSearches();
+    }
+
+    @Override
+    public double getComparisonsPerSearch() {
+        return treeMetrics.getComparisonsPerSearch();
+    }
+
+    @Override
+    public long getMaxComparisons() {
+        return treeMetrics.getMaxComparisons();
+    }
+
+    @Override
+    public Map<String, Long> getFixupCases() {
+        return treeMetrics.getCases();
+    }
+
+    @Override
+    public Map<String, Long> getRotations() {
+        return treeMetrics.getRotations();
+    }
+
+    @Override
+    public Map<String, Long> getRecolors() {
+        return treeMetrics.getRecolors();
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(name(operation), getLatency(operation).getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMicros() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = getLatency(operation);
+            String name = name(operation);
+            result.put(name + ".mean", latency.getMean() / 1000);
+            result.put(name + ".p50", latency.getPercentile(50) / 1000.0);
+            result.put(name + ".p99", latency.getPercentile(99) / 1000.0);
+            result.put(name + ".p99.9", latency.getPercentile(99.9) / 1000.0);
+            result.put(name + ".max", latency.getMax() / 1000.0);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+        treeMetrics.reset();
+    }
+
+    /**
+     * Returns a line per operation that was timed.
+     */
+    public String getStatisticsString() {
+        StringBuilder stats = new StringBuilder("Latency:");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = getLatency(operation);
+            if (latency.getCount() > 0) {
+                stats.append("\n  ").append(latency.getStatisticsString(name(operation)));
+            }
+        }
+        return stats.toString();
+    }
+
+    private static String name(Operation operation) {
+        return operation.name().toLowerCase();
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Map;
+
+/**
+ * Management interface of DictionaryMetrics, read by JMX clients such as
+ * jconsole once SearchBackend.registerMBean has been called.
+ */
+public interface DictionaryMetricsMXBean {
+
+    boolean isEnabled();
+
+    /**
+     * Starts or stops counting. While stopped the dictionary does no work for
+     * the metrics besides checking a flag.
+     */
+    void setEnabled(boolean enabled);
+
+    int getWordCount();
+
+    /**
+     * @return the number of black nodes on every path from the root of the
+     * red-black tree, or 0 for other trees. The height of the tree lies
+     * between this and twice this
+     */
+    int getBlackHeight();
+
+    double getTreeHeightBound();
+
+    long getSearches();
+
+    double getComparisonsPerSearch();
+
+    long getMaxComparisons();
+
+    Map<String, Long> getFixupCases();
+
+    Map<String, Long> getRotations();
+
+    Map<String, Long> getRecolors();
+
+    /**
+     * @return the number of times each operation was timed
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * @return the mean, p50, p99, p99.9 and largest latency of each operation
+     *         in microseconds, by names like "find.p99"
+     */
+    Map<String, Double> getLatencyMicros();
+
+    void reset();
+}
@@ -0,0 +1,150 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the words of a dictionary to a compact binary file and reads them back.
+ *
+ * The file starts with a header of the magic number, the format version, the
+ * number of words, the number of pooled strings and a CRC32 checksum of
+ * everything after the header. The header is followed by the string pool,
+ * which holds each distinct part of speech once, and then one record per word
+ * in the order of the tree: the word, the index of its part in the pool and
+ * its definition. Strings are stored as their length in bytes followed by
+ * their UTF-8 bytes.
+ *
+ * Since the records are already sorted, a snapshot is turned back into a tree
+ * with RedBlackTree.buildFromSorted without parsing or rebalancing.
+ */
+public class DictionarySnapshot {
+
+	public static final int MAGIC = 0x5444534E; // "TDSN"
+	public static final int VERSION = 1;
+	// magic, version, word count, pool size and checksum
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+
+	// Writes all the words of the tree to the file, in order. The tree is walked
+	// twice with its iterator instead of being copied into a list
+	public static void write(OrderedTreeInterface<Word> tree, String filename) throws IOException {
+		// each distinct part of speech is stored once and referenced by index
+		HashMap<String, Integer> poolIndex = new HashMap<>();
+		List<String> pool = new ArrayList<>();
+		for (Word word : tree) {
+			if (!poolIndex.containsKey(word.getPart())) {
+				poolIndex.put(word.getPart(), pool.size());
+				pool.add(word.getPart());
+			}
+		}
+
+		CRC32 checksum = new CRC32();
+		try (FileOutputStream file = new FileOutputStream(filename)) {
+			// the header is written once the checksum of the body is known
+			file.write(new byte[HEADER_BYTES]);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new CheckedOutputStream(file, checksum), 1 << 16));
+			for (String part : pool) {
+				writeString(out, part);
+			}
+			for (Word word : tree) {
+				writeString(out, word.getWord());
+				out.writeInt(poolIndex.get(word.getPart()));
+				writeString(out, word.getDefinition());
+			}
+			out.flush();
+		}
+
+		try (RandomAccessFile header = new RandomAccessFile(filename, "rw")) {
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(tree.size());
+			header.writeInt(pool.size());
+			header.writeLong(checksum.getValue());
+		}
+	}
+
+	// Reads the words of a snapshot, in the order they were saved
+	public static List<Word> read(String filename) throws IOException {
+		try (DataInputStream header = new DataInputStream(new FileInputStream(filename))) {
+			if (header.readInt() != MAGIC) {
+				throw new IOException(filename + " is not a dictionary snapshot");
+			}
+			int version = header.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version);
+			}
+			int count = header.readInt();
+			int poolSize = header.readInt();
+			long expectedChecksum = header.readLong();
+			if (count < 0 || poolSize < 0) {
+				throw new IOException("Corrupted snapshot header");
+			}
+
+			CRC32 checksum = new CRC32();
+			DataInputStream in = new DataInputStream(
+					new CheckedInputStream(new BufferedInputStream(header, 1 << 16), checksum));
+			String[] pool = new String[poolSize];
+			for (int i = 0; i < poolSize; i++) {
+				pool[i] = readString(in);
+			}
+			List<Word> words = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				Word word = new Word();
+				word.setWord(readString(in));
+				int part = in.readInt();
+				if (part < 0 || part >= poolSize) {
+					throw new IOException("Corrupted snapshot record " + i);
+				}
+				word.setPart(pool[part]);
+				word.setDefinition(readString(in));
+				words.add(word);
+			}
+			if (in.read() != -1) {
+				throw new IOException("Unexpected data after the last snapshot record");
+			}
+			if (checksum.getValue() != expectedChecksum) {
+				throw new IOException("Snapshot checksum mismatch in " + filename);
+			}
+			return words;
+		}
+	}
+
+	// Checks if the file starts with the snapshot magic number
+	public static boolean isSnapshot(String filename) throws FileNotFoundException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+			return in.readInt() == MAGIC;
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			return false; // shorter than the magic number
+		}
+	}
+
+	static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupted snapshot string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
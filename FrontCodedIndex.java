@@ -0,0 +1,333 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only sorted set of strings stored with front coding: the strings are
+ * split into blocks of blockSize strings, the first string of a block is
+ * stored in full and every other string only as the length of the prefix it
+ * shares with the string before it followed by the rest of its characters.
+ * Words of a dictionary share long prefixes, so this takes a small fraction of
+ * the memory of separate String objects.
+ *
+ * A lookup binary searches the first strings of the blocks, which are read in
+ * place, and then decodes at most one block. Strings are indexed by their
+ * position in increasing order of String.compareTo, which also gives rank and
+ * select in O(log n + blockSize).
+ *
+ * Characters are encoded one by one with 1 to 3 bytes like in UTF-8, so the
+ * encoded bytes sort in the same order as the strings.
+ */
+public class FrontCodedIndex {
+
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    private final int size;
+    private final int blockSize;
+    private final byte[] data;
+    private final int[] blockOffsets; // position in data where each block starts
+    private final int maxKeyBytes; // length of the longest encoded string
+
+    public FrontCodedIndex(Iterable<? extends CharSequence> sortedKeys) {
+        this(sortedKeys, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param sortedKeys the strings in strictly increasing order
+     * @param blockSize number of strings per block
+     * @throws IllegalArgumentException when the strings are not strictly increasing
+     */
+    public FrontCodedIndex(Iterable<? extends CharSequence> sortedKeys, int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        this.blockSize = blockSize;
+        byte[] out = new byte[1024];
+        int length = 0;
+        int[] offsets = new int[16];
+        int count = 0;
+        int longest = 0;
+        byte[] previous = null;
+        for (CharSequence key : sortedKeys) {
+            if (key == null) throw new NullPointerException("Index cannot store null references.");
+            byte[] encoded = encode(key);
+            int shared = 0;
+            if (previous != null) {
+                int compare = compare(previous, 0, previous.length, encoded);
+                if (compare == 0) throw new IllegalArgumentException("Index already contains value " + key);
+                if (compare > 0) throw new IllegalArgumentException("Input is not sorted at value " + key);
+                while (shared < previous.length && shared < encoded.length && previous[shared] == encoded[shared]) {
+                    shared++;
+                }
+            }
+            // room for two variable length ints of at most 5 bytes and the characters
+            if (length + 10 + encoded.length > out.length) {
+                out = Arrays.copyOf(out, Math.max(length + 10 + encoded.length, out.length * 2));
+            }
+            if (count % blockSize == 0) {
+                if (count / blockSize == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                offsets[count / blockSize] = length;
+                shared = 0;
+            } else {
+                length = writeInt(out, length, shared);
+            }
+            length = writeInt(out, length, encoded.length - shared);
+            System.arraycopy(encoded, shared, out, length, encoded.length - shared);
+            length += encoded.length - shared;
+            longest = Math.max(longest, encoded.length);
+            previous = encoded;
+            count++;
+        }
+        this.size = count;
+        this.data = Arrays.copyOf(out, length);
+        this.blockOffsets = Arrays.copyOf(offsets, (count + blockSize - 1) / blockSize);
+        this.maxKeyBytes = longest;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the position of key, or -1 when the index does not contain it
+     */
+    public int indexOf(CharSequence key) {
+        int position = search(encode(key));
+        return position >= 0 ? position : -1;
+    }
+
+    public boolean contains(CharSequence key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the number of strings in the index that are smaller than key
+     */
+    public int rank(CharSequence key) {
+        int position = search(encode(key));
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * @return the string at position index
+     * @throws IndexOutOfBoundsException when there is no such position
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        byte[] key = new byte[maxKeyBytes];
+        int block = index / blockSize;
+        int position = blockOffsets[block];
+        int length = 0;
+        for (int i = block * blockSize; i <= index; i++) {
+            int shared = 0;
+            if (i != block * blockSize) {
+                shared = readInt(position);
+                position += intLength(shared);
+            }
+            int suffix = readInt(position);
+            position += intLength(suffix);
+            System.arraycopy(data, position, key, shared, suffix);
+            position += suffix;
+            length = shared + suffix;
+        }
+        return decode(key, length);
+    }
+
+    /**
+     * Returns the positions of the strings that start with prefix: from the
+     * first element of the result up to, not including, the second.
+     */
+    public int[] prefixRange(CharSequence prefix) {
+        byte[] start = encode(prefix);
+        int from = rank(start);
+        // the smallest byte string larger than every string starting with the
+        // prefix is the prefix with its last byte increased, encoded characters
+        // never contain the byte 0xFF so this cannot overflow
+        if (start.length == 0) {
+            return new int[] { 0, size };
+        }
+        byte[] end = Arrays.copyOf(start, start.length);
+        end[end.length - 1]++;
+        return new int[] { from, rank(end) };
+    }
+
+    /**
+     * @return up to limit strings that start with prefix, in increasing order
+     */
+    public List<String> withPrefix(CharSequence prefix, int limit) {
+        int[] range = prefixRange(prefix);
+        List<String> result = new ArrayList<>();
+        for (int i = range[0]; i < range[1] && result.size() < limit; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes used by this index, not counting the object
+     * headers of the index itself.
+     */
+    public long getFootprint() {
+        return 16 + (long) data.length + 16 + 4L * blockOffsets.length;
+    }
+
+    public String getStatisticsString() {
+        return String.format("Front-coded index: %d strings in %d blocks, %d bytes (%.1f bytes per string)", size,
+                blockOffsets.length, getFootprint(), size == 0 ? 0.0 : (double) getFootprint() / size);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods working on encoded strings
+
+    private int rank(byte[] key) {
+        int position = search(key);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Finds key like Arrays.binarySearch: returns its position when it is in
+     * the index, and otherwise (-(insertion point) - 1).
+     */
+    private int search(byte[] key) {
+        // the last block whose first string is not larger than key
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = blockOffsets[mid];
+            int length = readInt(position);
+            int compare = compare(data, position + intLength(length), length, key);
+            if (compare == 0) {
+                return mid * blockSize;
+            } else if (compare < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+        // the first string of the block is smaller than key, the others are decoded in turn
+        byte[] current = new byte[maxKeyBytes];
+        int position = blockOffsets[block];
+        int suffix = readInt(position);
+        position += intLength(suffix);
+        System.arraycopy(data, position, current, 0, suffix);
+        position += suffix;
+        int end = Math.min(size, (block + 1) * blockSize);
+        for (int i = block * blockSize + 1; i < end; i++) {
+            int shared = readInt(position);
+            position += intLength(shared);
+            suffix = readInt(position);
+            position += intLength(suffix);
+            System.arraycopy(data, position, current, shared, suffix);
+            position += suffix;
+            int compare = compare(current, 0, shared + suffix, key);
+            if (compare == 0) {
+                return i;
+            } else if (compare > 0) {
+                return -i - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    /**
+     * Compares length bytes of bytes starting at offset with key, as unsigned bytes.
+     */
+    private static int compare(byte[] bytes, int offset, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int compare = (bytes[offset + i] & 0xFF) - (key[i] & 0xFF);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Encodes every character of key with 1 to 3 bytes, so that the encoded
+     * bytes compared as unsigned numbers sort like the strings.
+     */
+    static byte[] encode(CharSequence key) {
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        byte[] bytes = new byte[length];
+        int position = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    private static String decode(byte[] bytes, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = 0; i < length;) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i += 1;
+            } else if (b < 0xE0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            } else {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Writes value with 7 bits per byte, the high bit of a byte is set when
+     * more bytes follow.
+     */
+    private static int writeInt(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private int readInt(int position) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int intLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// A read-only copy of a dictionary for when it no longer changes, that needs far
+// less memory than the tree. The normalized keys of the words are kept in a
+// FrontCodedIndex and everything else in arrays by the position of the key, so
+// there are no Word objects. Spellings are only kept for words whose spelling is
+// not the same as their key, and each distinct part of speech is kept once.
+//
+// Positions are in the order of the dictionary, from last to first like the tree,
+// so they match the positions reported by SearchBackend.getPositionString
+public class FrozenDictionary {
+
+	private final FrontCodedIndex keys; // in increasing order, the reverse of the dictionary
+	private final String[] spellings; // null where the spelling is the key
+	private final String[] parts;
+	private final String[] definitions;
+
+	// Copies the words, which must be in the order of the tree
+	public static FrozenDictionary of(Iterable<Word> words) {
+		List<Word> list = new ArrayList<>();
+		for (Word word : words) {
+			list.add(word);
+		}
+		return new FrozenDictionary(list);
+	}
+
+	private FrozenDictionary(List<Word> words) {
+		int size = words.size();
+		List<String> increasingKeys = new ArrayList<>(size);
+		spellings = new String[size];
+		parts = new String[size];
+		definitions = new String[size];
+		HashMap<String, String> pool = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			// the tree is sorted from last to first, the index from first to last
+			Word word = words.get(size - 1 - i);
+			increasingKeys.add(word.getKey());
+			if (!word.getWord().equals(word.getKey())) {
+				spellings[i] = word.getWord();
+			}
+			parts[i] = pool.computeIfAbsent(word.getPart(), part -> part);
+			definitions[i] = word.getDefinition();
+		}
+		keys = new FrontCodedIndex(increasingKeys);
+	}
+
+	public int size() {
+		return definitions.length;
+	}
+
+	// Returns the definition of a word, or null when the dictionary does not contain it
+	public String findDefinition(CharSequence word) {
+		int index = keys.indexOf(normalize(word));
+		return index < 0 ? null : definitions[index];
+	}
+
+	// Returns the position of a word starting at 0, or -1 when the dictionary does
+	// not contain it
+	public int getPosition(CharSequence word) {
+		int index = keys.indexOf(normalize(word));
+		return index < 0 ? -1 : size() - 1 - index;
+	}
+
+	// Returns the word at a position starting at 0
+	public Word getWord(int position) {
+		if (position < 0 || position >= size()) {
+			throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+		}
+		int index = size() - 1 - position;
+		Word word = new Word();
+		word.setWord(spellings[index] != null ? spellings[index] : keys.get(index));
+		word.setPart(parts[index]);
+		word.setDefinition(definitions[index]);
+		return word;
+	}
+
+	// Returns up to limit words that start with the prefix, in the order of the
+	// dictionary like SearchBackend.prefixRange
+	public List<Word> prefixRange(String prefix, int limit) {
+		int[] range = keys.prefixRange(Word.normalize(prefix));
+		List<Word> result = new ArrayList<>();
+		for (int index = range[1] - 1; index >= range[0] && result.size() < limit; index--) {
+			result.add(getWord(size() - 1 - index));
+		}
+		return result;
+	}
+
+	public String getStatisticsString() {
+		return "Frozen dictionary of " + size() + " words\n" + keys.getStatisticsString();
+	}
+
+	private static String normalize(CharSequence word) {
+		return Word.normalize(word.toString());
+	}
+}
@@ -0,0 +1,86 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how fast SearchBackend finds definitions and how many bytes each
+ * lookup allocates, using the allocation counter of the current thread. The
+ * lookups take the words from one reused StringBuilder, the way a spell
+ * checker reads words from a text, and are compared with searching the tree
+ * with a new Word for every lookup. Prints one line per kind of lookup:
+ * name, lookups per second and bytes allocated per lookup. The compiler may
+ * remove the allocation of the new Words by escape analysis, running with
+ * -XX:-DoEscapeAnalysis shows the allocations it does not rely on.
+ *
+ * Usage: java LookupAllocationBenchmark [words] [lookups]
+ */
+public class LookupAllocationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+        RedBlackTree<Word> tree = new RedBlackTree<>();
+        List<Word> sorted = new ArrayList<>(words);
+        for (int i = 0; i < words; i++) {
+            Word word = new Word();
+            word.setWord(spelling(i));
+            word.setDefinition("definition " + i);
+            sorted.add(word);
+        }
+        tree.bulkLoad(sorted);
+        SearchBackend backend = new SearchBackend(tree, new WordReader());
+        ConcurrentDictionary<Word> dictionary = new ConcurrentDictionary<>(tree);
+        // the text is created up front, so only the lookups are measured
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            text.append(spelling((int) ((i * 2654435761L) % words))).append(' ');
+        }
+        String[] spellings = text.toString().split(" ");
+
+        System.out.println("lookup,lookupsPerSecond,bytesPerLookup");
+        for (int round = 0; round < 3; round++) {
+            // the first rounds warm up the compiler
+            boolean print = round == 2;
+            measure("lookupDefinition", print, lookups, () -> {
+                long found = 0;
+                StringBuilder buffer = new StringBuilder(16);
+                for (int i = 0; i < lookups; i++) {
+                    buffer.setLength(0);
+                    buffer.append(spellings[i & 1023]);
+                    if (backend.lookupDefinition(buffer, 0, buffer.length()) != null) found++;
+                }
+                return found;
+            });
+            measure("searchWithNewWord", print, lookups, () -> {
+                long found = 0;
+                for (int i = 0; i < lookups; i++) {
+                    Word probe = new Word();
+                    probe.setWord(spellings[i & 1023]);
+                    if (dictionary.search(probe).getDefinition() != null) found++;
+                }
+                return found;
+            });
+        }
+    }
+
+    private interface Run {
+        long run();
+    }
+
+    private static void measure(String name, boolean print, int lookups, Run run) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long found = run.run();
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        if (found != lookups) throw new IllegalStateException(name + " found " + found + " of " + lookups + " words");
+        if (print) System.out.printf("%s,%.0f,%.2f%n", name, lookups / elapsed, (double) bytes / lookups);
+    }
+
+    private static String spelling(int i) {
+        return String.format("w%09d", i);
+    }
+}
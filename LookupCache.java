@@ -0,0 +1,310 @@
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded cache that decides what to keep by how often keys are used,
+ * following the W-TinyLFU policy: new entries go into a small LRU window, and
+ * an entry leaving the window only replaces an entry of the main area when a
+ * frequency sketch says it is used more often. The main area is a segmented
+ * LRU with a probation and a protected part, entries are protected once they
+ * are used again while on probation.
+ *
+ * Lookups read a ConcurrentHashMap without locking. Recording the access for
+ * the eviction policy only happens when the policy lock is free, so under
+ * contention some accesses are not counted, which only makes the policy
+ * slightly less accurate. Changes take the policy lock.
+ *
+ * Every invalidation increases a generation number. A value computed before
+ * an invalidation is not stored, which keeps a lookup that raced with a
+ * change from putting an out of date value back into the cache.
+ */
+public class LookupCache<K, V> {
+
+    /**
+     * An entry of the cache, linked into the list of the area it is in.
+     */
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        int area;
+        Entry<K, V> previous;
+        Entry<K, V> next;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Doubly linked list of entries, most recently used first.
+     */
+    private static final class AccessOrder<K, V> {
+        Entry<K, V> head;
+        Entry<K, V> tail;
+        int size;
+
+        void addFirst(Entry<K, V> entry) {
+            entry.previous = null;
+            entry.next = head;
+            if (head != null) head.previous = entry;
+            head = entry;
+            if (tail == null) tail = entry;
+            size++;
+        }
+
+        void remove(Entry<K, V> entry) {
+            if (entry.previous != null) entry.previous.next = entry.next;
+            else head = entry.next;
+            if (entry.next != null) entry.next.previous = entry.previous;
+            else tail = entry.previous;
+            entry.previous = entry.next = null;
+            size--;
+        }
+
+        void moveToFront(Entry<K, V> entry) {
+            remove(entry);
+            addFirst(entry);
+        }
+    }
+
+    /**
+     * Count-min sketch with four rows of small saturating counters that
+     * estimates how often each key was used recently. All counters are halved
+     * once enough accesses were recorded, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+            counters = new byte[ROWS][width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < ROWS; row++) {
+                int i = index(hash, row);
+                if (counters[row][i] < MAX_COUNT) counters[row][i]++;
+            }
+            if (++additions >= sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) row[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final ConcurrentHashMap<K, Entry<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    // guarded by policyLock
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedArea = new AccessOrder<>();
+    private final FrequencySketch sketch;
+    private volatile long generation = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LookupCache(int maximumSize) {
+        if (maximumSize < 1) throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * @return the cached value for key, or null if it is not cached
+     */
+    public V get(K key) {
+        Entry<K, V> entry = data.get(key);
+        if (entry == null) {
+            misses.increment();
+            if (policyLock.tryLock()) {
+                try {
+                    sketch.increment(key);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (policyLock.tryLock()) {
+            try {
+                if (data.get(key) == entry) onAccess(entry);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns the current generation, to be passed to put after computing a value.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores a value unless something was invalidated since generation was read.
+     * @param generation result of getGeneration before the value was computed
+     */
+    public void put(K key, V value, long generation) {
+        policyLock.lock();
+        try {
+            if (generation != this.generation || data.containsKey(key)) {
+                return;
+            }
+            Entry<K, V> entry = new Entry<>(key, value);
+            entry.area = WINDOW;
+            window.addFirst(entry);
+            data.put(key, entry);
+            sketch.increment(key);
+            if (window.size > windowMaximum) {
+                evictFromWindow();
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the value for key, and keeps values computed before this call from being stored.
+     */
+    public void invalidate(K key) {
+        policyLock.lock();
+        try {
+            generation++;
+            Entry<K, V> entry = data.remove(key);
+            if (entry != null) {
+                areaOf(entry).remove(entry);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all values, and keeps values computed before this call from being stored.
+     */
+    public void invalidateAll() {
+        policyLock.lock();
+        try {
+            generation++;
+            data.clear();
+            window.head = window.tail = null;
+            probation.head = probation.tail = null;
+            protectedArea.head = protectedArea.tail = null;
+            window.size = probation.size = protectedArea.size = 0;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public String getStatisticsString() {
+        long hitCount = getHits(), missCount = getMisses();
+        long total = hitCount + missCount;
+        return String.format("Cache: %d of %d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                size(), maximumSize, hitCount, missCount, total == 0 ? 0.0 : 100.0 * hitCount / total,
+                getEvictions());
+    }
+
+    // ---------------------------------------------------------------------------
+    // Policy methods, called with policyLock held
+
+    private AccessOrder<K, V> areaOf(Entry<K, V> entry) {
+        return entry.area == WINDOW ? window : entry.area == PROBATION ? probation : protectedArea;
+    }
+
+    private void onAccess(Entry<K, V> entry) {
+        sketch.increment(entry.key);
+        if (entry.area == PROBATION) {
+            // used again while on probation, so it is promoted
+            probation.remove(entry);
+            entry.area = PROTECTED;
+            protectedArea.addFirst(entry);
+            if (protectedArea.size > protectedMaximum) {
+                Entry<K, V> demoted = protectedArea.tail;
+                protectedArea.remove(demoted);
+                demoted.area = PROBATION;
+                probation.addFirst(demoted);
+            }
+        } else {
+            areaOf(entry).moveToFront(entry);
+        }
+    }
+
+    private void evictFromWindow() {
+        Entry<K, V> candidate = window.tail;
+        window.remove(candidate);
+        candidate.area = PROBATION;
+        if (window.size + probation.size + protectedArea.size < maximumSize) {
+            probation.addFirst(candidate);
+            return;
+        }
+        // the main area is full: keep whichever of the candidate and the probation
+        // victim is used more often
+        Entry<K, V> victim = probation.tail != null ? probation.tail : protectedArea.tail;
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            areaOf(victim).remove(victim);
+            data.remove(victim.key);
+            probation.addFirst(candidate);
+        } else {
+            data.remove(candidate.key);
+        }
+        evictions.increment();
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a dictionary file of word/part/definition lines by memory mapping it
+ * and scanning the raw bytes for the '/' and newline delimiters. Like
+ * SeparateWords, an object of this class is a cursor: next() moves it to the
+ * following record and getWord, getPart and getDefinition return the fields
+ * of the current record. Until one of these getters is called the fields are
+ * only offsets into the mapped file, no strings or arrays are created.
+ *
+ * Commas inside a definition are kept, only trailing commas and whitespace
+ * (the empty csv columns) are dropped. A field, or the whole csv cell, may be
+ * surrounded by double quotes, in which case commas and newlines inside the
+ * quotes are part of the text and "" stands for a single quote character. Only
+ * a quote that starts a field opens a quoted text, any other quote outside
+ * quotes is an ordinary character, so a stray quote in a definition does not
+ * join the lines after it into one record.
+ * Since the definition is everything after the second '/', it may itself
+ * contain '/' characters.
+ *
+ * Files larger than 2GB are mapped one window at a time.
+ */
+public class MappedDictionaryParser implements WordInterface, Closeable {
+
+	// indexes of the fields of a record
+	public static final int WORD = 0;
+	public static final int PART = 1;
+	public static final int DEFINITION = 2;
+
+	// default number of bytes mapped at once
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	private final long rangeStart; // file offset of the first byte to read
+	private final long rangeEnd; // file offset after the last byte to read
+	private int windowSize;
+	private MappedByteBuffer buffer; // currently mapped window of the file
+	private long windowStart; // file offset of the first byte in buffer
+	private int position = 0; // offset in buffer where the next record starts
+
+	// byte offsets in buffer of each field of the current record
+	private final int[] fieldStart = new int[3];
+	private final int[] fieldEnd = new int[3];
+	private final boolean[] fieldQuoted = new boolean[3];
+	private final boolean[] fieldOpensInQuotes = new boolean[3];
+	private byte[] scratch = new byte[256];
+	private long recordsRead = 0;
+
+	public MappedDictionaryParser(String filename) throws IOException {
+		this(filename, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedDictionaryParser(String filename, int windowSize) throws IOException {
+		this(filename, 0, Long.MAX_VALUE, windowSize);
+	}
+
+	// Reads only the records between the start and end byte offsets of the file,
+	// start must be the beginning of a line and end the end of a line
+	public MappedDictionaryParser(String filename, long start, long end, int windowSize) throws IOException {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+		}
+		if (start < 0 || end < start) {
+			throw new IllegalArgumentException("Invalid range " + start + " to " + end);
+		}
+		this.channel = new FileInputStream(filename).getChannel();
+		this.windowSize = windowSize;
+		long size;
+		try {
+			size = channel.size();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		this.rangeStart = Math.min(start, size);
+		this.rangeEnd = Math.min(end, size);
+		this.windowStart = rangeStart;
+	}
+
+	// Moves the cursor to the next non blank record, returns false at the end of the file
+	public boolean next() throws IOException {
+		while (true) {
+			if (buffer == null || position >= buffer.limit()) {
+				if (windowStart + position >= rangeEnd) {
+					return false;
+				}
+				map(windowStart + position);
+			}
+			boolean lastWindow = windowStart + buffer.limit() >= rangeEnd;
+			int end = scanRecord(position, lastWindow);
+			if (end < 0) {
+				// the record continues past the mapped window
+				if (position == 0) {
+					// a single record is larger than the window, so the window has to grow
+					if (windowSize == Integer.MAX_VALUE) {
+						throw new IOException("Record at offset " + windowStart + " is larger than 2GB");
+					}
+					windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+				}
+				map(windowStart + position);
+				continue;
+			}
+			boolean blank = fieldStart[WORD] == fieldEnd[WORD] && fieldStart[PART] == fieldEnd[PART]
+					&& fieldStart[DEFINITION] == fieldEnd[DEFINITION];
+			position = end;
+			if (!blank) {
+				recordsRead++;
+				return true;
+			}
+		}
+	}
+
+	// Maps the window of the file that starts at the given offset
+	private void map(long offset) throws IOException {
+		long length = Math.min(windowSize, rangeEnd - offset);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		windowStart = offset;
+		position = 0;
+	}
+
+	// Records the field offsets of the record that starts at start, and returns
+	// the offset right after it, or -1 when the record is cut off by the end of
+	// the window
+	private int scanRecord(int start, boolean lastWindow) {
+		int limit = buffer.limit();
+		int field = WORD;
+		fieldStart[WORD] = start;
+		fieldQuoted[WORD] = fieldQuoted[PART] = fieldQuoted[DEFINITION] = false;
+		fieldOpensInQuotes[WORD] = false;
+		boolean inQuotes = false;
+		int contentEnd = start; // end of the current field without trailing commas or whitespace
+		int i = start;
+		while (i < limit) {
+			byte b = buffer.get(i);
+			if (b == '"' && (inQuotes || i == fieldStart[field])) {
+				fieldQuoted[field] = true;
+				if (inQuotes && i + 1 >= limit && !lastWindow) {
+					return -1; // cannot tell if this quote is escaped
+				}
+				if (inQuotes && i + 1 < limit && buffer.get(i + 1) == '"') {
+					i++; // "" inside quotes is an escaped quote
+				} else {
+					inQuotes = !inQuotes;
+				}
+				i++;
+				contentEnd = i;
+			} else if (b == '\n' && !inQuotes) {
+				break;
+			} else if (b == '/' && field < DEFINITION) {
+				fieldEnd[field] = contentEnd;
+				field++;
+				i++;
+				fieldStart[field] = i;
+				fieldOpensInQuotes[field] = inQuotes;
+				fieldQuoted[field] = inQuotes;
+				contentEnd = i;
+			} else {
+				i++;
+				if (inQuotes || (b != ',' && b != ' ' && b != '\t' && b != '\r')) {
+					contentEnd = i;
+				}
+			}
+		}
+		if (i >= limit && !lastWindow) {
+			return -1;
+		}
+		fieldEnd[field] = contentEnd;
+		for (int f = field + 1; f <= DEFINITION; f++) {
+			fieldStart[f] = fieldEnd[f] = contentEnd;
+		}
+		return i < limit ? i + 1 : limit;
+	}
+
+	// Returns a read only view of the raw bytes of a field of the current record,
+	// without copying them. Quotes are not removed from quoted fields
+	public ByteBuffer getFieldBytes(int field) {
+		return buffer.slice(fieldStart[field], fieldEnd[field] - fieldStart[field]).asReadOnlyBuffer();
+	}
+
+	// Decodes a field of the current record into a String
+	public String getField(int field) {
+		int length = fieldEnd[field] - fieldStart[field];
+		if (length > scratch.length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(fieldStart[field], scratch, 0, length);
+		String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+		return fieldQuoted[field] ? unquote(text, fieldOpensInQuotes[field]) : text;
+	}
+
+	// Removes the quote characters of a quoted field, "" inside quotes becomes ".
+	// Like in scanRecord, a quote outside quotes only opens them at the start
+	private static String unquote(String text, boolean inQuotes) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != '"') {
+				sb.append(c);
+			} else if (inQuotes && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+				sb.append('"');
+				i++;
+			} else if (inQuotes || i == 0) {
+				inQuotes = !inQuotes;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getWord() {
+		return getField(WORD);
+	}
+
+	@Override
+	public String getPart() {
+		return getField(PART);
+	}
+
+	@Override
+	public String getDefinition() {
+		return getField(DEFINITION);
+	}
+
+	// Creates a Word object holding the fields of the current record
+	public Word toWord() {
+		Word word = new Word();
+		word.setWord(getWord());
+		word.setPart(getPart());
+		word.setDefinition(getDefinition());
+		return word;
+	}
+
+	// Helper method that returns the number of records read so far
+	public long getRecordsRead() {
+		return recordsRead;
+	}
+
+	// Helper method that returns the number of bytes consumed so far
+	public long getBytesRead() {
+		return buffer == null ? 0 : windowStart + position - rangeStart;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,27 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+public interface OrderedTreeInterface<T extends Comparable<T>> extends RedBlackTreeInterface<T>, Iterable<T> {
+
+    // adds many values at once, faster than inserting them one by one when they are already sorted
+    public void bulkLoad(Iterable<T> data) throws NullPointerException, IllegalArgumentException;
+
+    // adds the values that are not contained yet, and tells for each value in turn whether it was added
+    public boolean[] insertAll(Collection<? extends T> values) throws NullPointerException;
+
+    // removes the values that are contained, and tells for each value in turn whether it was removed
+    public boolean[] removeAll(Collection<? extends T> values) throws NullPointerException;
+
+    // returns up to limit values in order, starting at the first value not smaller than start, while inRange accepts them
+    public ArrayList<T> rangeFrom(T start, Predicate<? super T> inRange, int limit);
+
+    // returns the number of values smaller than data
+    public int rank(T data);
+
+    // returns the value at position index of the values in order
+    public T select(int index);
+
+    // returns up to limit values in order, starting at position offset
+    public ArrayList<T> page(int offset, int limit);
+}
@@ -0,0 +1,259 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads a dictionary file using several threads. The file is split on line
+ * boundaries into chunks, each chunk is parsed and sorted on its own by a task
+ * of a ForkJoinPool, and the sorted runs are then merged with a k-way merge
+ * into one sorted stream of words that is used to build the tree. Reading the
+ * runs and building the tree are separate steps, so a tree that is shared
+ * with readers only has to be locked while it is built.
+ *
+ * Chunks are split at newline bytes, so a quoted definition that contains a
+ * line break may end up split in two. Files like that should be loaded with
+ * WordReader instead.
+ */
+public class ParallelDictionaryLoader {
+
+	// smallest chunk worth giving its own task
+	public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	private final ForkJoinPool pool;
+	private final long chunkSize;
+
+	// Statistics about the most recent call to load, or to readSortedRuns and build
+	protected long linesRead = 0;
+	protected long bytesRead = 0;
+	protected long loadNanos = 0;
+
+	// Splits files into about four chunks per thread of the pool
+	public ParallelDictionaryLoader(ForkJoinPool pool) {
+		this(pool, 0);
+	}
+
+	// chunkSize is the approximate number of bytes per chunk, or 0 to pick one
+	// from the file size and the parallelism of the pool
+	public ParallelDictionaryLoader(ForkJoinPool pool, long chunkSize) {
+		if (chunkSize < 0) {
+			throw new IllegalArgumentException("Chunk size cannot be negative: " + chunkSize);
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	// Reads all the words of the file and adds them to the tree. An empty tree
+	// is built directly from the merged runs in linear time. If a chunk cannot be
+	// read the tree is left unchanged and the error of that chunk is thrown
+	public void load(String filename, OrderedTreeInterface<Word> tree) throws IOException {
+		build(readSortedRuns(filename), filename, tree);
+	}
+
+	// Parses and sorts the chunks of the file on the threads of the pool without
+	// touching any tree, and returns one sorted run of words per chunk
+	public List<List<Word>> readSortedRuns(String filename) throws IOException {
+		long start = System.nanoTime();
+		linesRead = 0;
+		bytesRead = 0;
+		try {
+			List<ForkJoinTask<List<Word>>> tasks = new ArrayList<>();
+			List<Long> bounds = findChunkBounds(filename);
+			for (int i = 0; i + 1 < bounds.size(); i++) {
+				long from = bounds.get(i);
+				long to = bounds.get(i + 1);
+				tasks.add(pool.submit(() -> readSortedRun(filename, from, to)));
+			}
+			List<List<Word>> runs = new ArrayList<>(tasks.size());
+			int total = 0;
+			for (ForkJoinTask<List<Word>> task : tasks) {
+				List<Word> run = task.get();
+				runs.add(run);
+				total += run.size();
+			}
+			linesRead = total;
+			bytesRead = bounds.get(bounds.size() - 1);
+			return runs;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + filename);
+		} catch (ExecutionException e) {
+			throw rethrow(e, filename);
+		} finally {
+			loadNanos = System.nanoTime() - start;
+		}
+	}
+
+	// Merges the sorted runs returned by readSortedRuns and adds the words to the
+	// tree. An empty tree is built directly from the merged runs in linear time,
+	// words already in a tree that is not empty keep their entry
+	public void build(List<List<Word>> runs, String filename, OrderedTreeInterface<Word> tree) {
+		long start = System.nanoTime();
+		try {
+			int total = 0;
+			for (List<Word> run : runs) {
+				total += run.size();
+			}
+			DictionaryEvents.LoadPhase build = new DictionaryEvents.LoadPhase();
+			build.begin();
+			Iterator<Word> merged = new MergeIterator(runs);
+			if (tree.isEmpty() && tree instanceof RedBlackTree) {
+				// a red-black tree is linked straight from the merged runs without copying them
+				((RedBlackTree<Word>) tree).buildFromSorted(merged, total);
+			} else {
+				List<Word> words = new ArrayList<>(total);
+				merged.forEachRemaining(words::add);
+				if (tree.isEmpty()) {
+					tree.bulkLoad(words);
+				} else {
+					tree.insertAll(words);
+				}
+			}
+			build.commit("merge and build", filename, total, bytesRead, 1);
+		} finally {
+			loadNanos += System.nanoTime() - start;
+		}
+	}
+
+	// Helper method that throws the error of a failed chunk. The pool wraps the
+	// exceptions of its tasks, possibly several times, so the first IOException
+	// in the chain of causes is thrown, otherwise the cause itself
+	private static IOException rethrow(ExecutionException e, String filename) throws IOException {
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+		}
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException("Could not load " + filename, cause);
+	}
+
+	// Returns the byte offsets at which the chunks start, followed by the file
+	// size. Every offset except the first directly follows a newline
+	private List<Long> findChunkBounds(String filename) throws IOException {
+		try (FileChannel channel = new FileInputStream(filename).getChannel()) {
+			long size = channel.size();
+			long step = chunkSize > 0 ? chunkSize
+					: Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L));
+			List<Long> bounds = new ArrayList<>();
+			bounds.add(0L);
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+			long position = step;
+			while (position < size) {
+				// move forward to the byte after the next newline
+				long boundary = size;
+				buffer.clear();
+				long readAt = position;
+				int read;
+				search: while ((read = channel.read(buffer, readAt)) > 0) {
+					for (int i = 0; i < read; i++) {
+						if (buffer.get(i) == '\n') {
+							boundary = readAt + i + 1;
+							break search;
+						}
+					}
+					readAt += read;
+					buffer.clear();
+				}
+				if (boundary >= size) {
+					break;
+				}
+				bounds.add(boundary);
+				position = boundary + step;
+			}
+			bounds.add(size);
+			return bounds;
+		}
+	}
+
+	// Parses the words between two byte offsets and sorts them
+	private static List<Word> readSortedRun(String filename, long from, long to) throws IOException {
+		DictionaryEvents.LoadPhase parse = new DictionaryEvents.LoadPhase();
+		parse.begin();
+		List<Word> run = new ArrayList<>();
+		try (MappedDictionaryParser parser = new MappedDictionaryParser(filename, from, to,
+				MappedDictionaryParser.DEFAULT_WINDOW_SIZE)) {
+			while (parser.next()) {
+				run.add(parser.toWord());
+			}
+		}
+		parse.commit("parse", filename, run.size(), to - from, 1);
+		DictionaryEvents.LoadPhase sort = new DictionaryEvents.LoadPhase();
+		sort.begin();
+		run.sort(null);
+		sort.commit("sort", filename, run.size(), to - from, 1);
+		return run;
+	}
+
+	// Returns the throughput of the last load in lines and bytes per second
+	public String getLoadStatisticsString() {
+		double seconds = loadNanos / 1_000_000_000.0;
+		if (seconds <= 0) {
+			return "No file loaded";
+		}
+		return String.format("Loaded %d lines (%d bytes) in %.3f s with %d threads: %.0f lines/s, %.0f bytes/s",
+				linesRead, bytesRead, seconds, pool.getParallelism(), linesRead / seconds, bytesRead / seconds);
+	}
+
+	/**
+	 * Iterates over several sorted runs in overall sorted order, using a heap
+	 * that holds the next word of every run that is not used up.
+	 */
+	private static class MergeIterator implements Iterator<Word> {
+		private final PriorityQueue<RunCursor> heap = new PriorityQueue<>();
+
+		private MergeIterator(List<List<Word>> runs) {
+			for (List<Word> run : runs) {
+				if (!run.isEmpty()) {
+					heap.add(new RunCursor(run));
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heap.isEmpty();
+		}
+
+		@Override
+		public Word next() {
+			RunCursor cursor = heap.poll();
+			if (cursor == null) {
+				throw new NoSuchElementException();
+			}
+			Word word = cursor.run.get(cursor.index++);
+			if (cursor.index < cursor.run.size()) {
+				heap.add(cursor);
+			}
+			return word;
+		}
+	}
+
+	private static class RunCursor implements Comparable<RunCursor> {
+		private final List<Word> run;
+		private int index = 0;
+
+		private RunCursor(List<Word> run) {
+			this.run = run;
+		}
+
+		@Override
+		public int compareTo(RunCursor other) {
+			return run.get(index).compareTo(other.run.get(other.index));
+		}
+	}
+}
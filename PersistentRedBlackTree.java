@@ -0,0 +1,381 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Red-Black Tree whose nodes are never modified once they are created. An
+ * insert or remove copies only the nodes on the path from the root to the
+ * changed position and shares every other node with the previous version of
+ * the tree, then publishes the new root with a single volatile write.
+ *
+ * Readers never lock: every read starts with one volatile read of the current
+ * version and then works on nodes that cannot change anymore. Writers are
+ * serialized with each other. Since old versions stay valid, snapshot() gives
+ * a consistent point-in-time copy of the tree in constant time, for example to
+ * compute statistics or export the dictionary while writes continue.
+ *
+ * Insertion and removal follow the functional red-black tree algorithms of
+ * Okasaki and Kahrs.
+ *
+ * This is a standalone engine: SearchBackend does not use it. The backend needs
+ * the rank, page, range and batch operations of OrderedTreeInterface, which
+ * this tree does not have, so its lookups still go through ConcurrentDictionary
+ * and its statistics and snapshot files are made under the read lock.
+ * PersistentRedBlackTreeTest checks the snapshots.
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterface<T>, Iterable<T> {
+
+    /**
+     * This class represents an immutable node holding a single value. Like in
+     * RedBlackTree, a blackHeight of 0 means the node is red and 1 that it is black.
+     */
+    protected static final class Node<T> {
+        public final T data;
+        public final int blackHeight;
+        public final Node<T> left;
+        public final Node<T> right;
+
+        public Node(int blackHeight, Node<T> left, T data, Node<T> right) {
+            this.blackHeight = blackHeight;
+            this.left = left;
+            this.data = data;
+            this.right = right;
+        }
+    }
+
+    /**
+     * One version of the tree: its root together with its size, so that both
+     * are read with a single volatile read.
+     */
+    protected static final class Version<T> {
+        public final Node<T> root;
+        public final int size;
+
+        public Version(Node<T> root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    private static final int RED = 0;
+    private static final int BLACK = 1;
+
+    protected volatile Version<T> current;
+
+    public PersistentRedBlackTree() {
+        this.current = new Version<>(null, 0);
+    }
+
+    private PersistentRedBlackTree(Version<T> version) {
+        this.current = version;
+    }
+
+    /**
+     * Returns a tree holding the values this tree holds right now. It shares
+     * all nodes with this tree, so it is created in constant time, and later
+     * changes to either tree are not visible in the other.
+     * @return point-in-time copy of this tree
+     */
+    public PersistentRedBlackTree<T> snapshot() {
+        return new PersistentRedBlackTree<>(current);
+    }
+
+    /**
+     * Inserts data into a new version of the tree and publishes it.
+     * @param data to be added into this tree
+     * @return true if the value was inserted
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when data is already contained in the tree
+     */
+    @Override
+    public synchronized boolean insert(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        Version<T> version = current;
+        if (findNode(version.root, data) != null) {
+            throw new IllegalArgumentException("This RedBlackTree already contains value " + data.toString());
+        }
+        current = new Version<>(blacken(insert(version.root, data)), version.size + 1);
+        return true;
+    }
+
+    /**
+     * Removes data from a new version of the tree and publishes it.
+     * @param data the value to remove
+     * @return true if the value was removed
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when data is not stored in the tree
+     */
+    @Override
+    public synchronized boolean remove(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        Version<T> version = current;
+        if (findNode(version.root, data) == null) {
+            throw new IllegalArgumentException(
+                    "The following value is not in the tree and cannot be deleted: " + data.toString());
+        }
+        current = new Version<>(blacken(delete(version.root, data)), version.size - 1);
+        return true;
+    }
+
+    @Override
+    public T search(T data) throws NullPointerException, IllegalArgumentException {
+        if (data == null) throw new NullPointerException("Word input is null.");
+        Node<T> node = findNode(current.root, data);
+        if (node == null) throw new IllegalArgumentException("Word does not exist in dictionary.");
+        return node.data;
+    }
+
+    @Override
+    public T find(Probe<? super T> probe) {
+        if (probe == null) throw new NullPointerException("Probe is null.");
+        Node<T> node = current.root;
+        while (node != null) {
+            int compare = probe.compareTo(node.data);
+            if (compare == 0) {
+                return node.data;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(T data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        return findNode(current.root, data) != null;
+    }
+
+    @Override
+    public ArrayList<T> getSubtree(T data) {
+        Node<T> startNode = findNode(current.root, data);
+        if (startNode == null) {
+            return null;
+        }
+        ArrayList<T> subtree = new ArrayList<>();
+        ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(startNode);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            subtree.add(node.data);
+            if (node.right != null) stack.push(node.right);
+            if (node.left != null) stack.push(node.left);
+        }
+        return subtree;
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns an iterator over the values of the version of the tree that is
+     * current when this method is called. Later changes do not affect it.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Node<T> root = current.root;
+        return new Iterator<T>() {
+            // the nodes whose value and right subtree are still to be visited
+            private final ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+            {
+                pushLeftPath(root);
+            }
+
+            private void pushLeftPath(Node<T> node) {
+                for (; node != null; node = node.left) {
+                    stack.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (stack.isEmpty()) throw new NoSuchElementException();
+                Node<T> node = stack.pop();
+                pushLeftPath(node.right);
+                return node.data;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (T value : this) {
+            if (sb.length() > 2) sb.append(", ");
+            sb.append(value);
+        }
+        return sb.append(" ]").toString();
+    }
+
+    // ---------------------------------------------------------------------------
+    // All methods below create new nodes instead of modifying existing ones
+
+    private Node<T> findNode(Node<T> node, T data) {
+        while (node != null) {
+            int compare = data.compareTo(node.data);
+            if (compare == 0) {
+                return node;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static boolean isRed(Node<?> node) {
+        return node != null && node.blackHeight == RED;
+    }
+
+    private static boolean isBlack(Node<?> node) {
+        return node != null && node.blackHeight == BLACK;
+    }
+
+    private Node<T> blacken(Node<T> node) {
+        return node == null || node.blackHeight == BLACK ? node : new Node<>(BLACK, node.left, node.data, node.right);
+    }
+
+    private Node<T> insert(Node<T> node, T data) {
+        if (node == null) {
+            return new Node<>(RED, null, data, null);
+        }
+        int compare = data.compareTo(node.data);
+        if (node.blackHeight == BLACK) {
+            return compare < 0 ? balance(insert(node.left, data), node.data, node.right)
+                    : balance(node.left, node.data, insert(node.right, data));
+        }
+        return compare < 0 ? new Node<>(RED, insert(node.left, data), node.data, node.right)
+                : new Node<>(RED, node.left, node.data, insert(node.right, data));
+    }
+
+    /**
+     * Builds a black node from the given children, fixing a red node with a
+     * red child directly below it by turning the three into a red node with
+     * two black children.
+     */
+    private Node<T> balance(Node<T> left, T data, Node<T> right) {
+        if (isRed(left) && isRed(right)) {
+            return new Node<>(RED, blacken(left), data, blacken(right));
+        }
+        if (isRed(left)) {
+            if (isRed(left.left)) {
+                return new Node<>(RED, blacken(left.left), left.data, new Node<>(BLACK, left.right, data, right));
+            }
+            if (isRed(left.right)) {
+                return new Node<>(RED, new Node<>(BLACK, left.left, left.data, left.right.left), left.right.data,
+                        new Node<>(BLACK, left.right.right, data, right));
+            }
+        }
+        if (isRed(right)) {
+            if (isRed(right.right)) {
+                return new Node<>(RED, new Node<>(BLACK, left, data, right.left), right.data, blacken(right.right));
+            }
+            if (isRed(right.left)) {
+                return new Node<>(RED, new Node<>(BLACK, left, data, right.left.left), right.left.data,
+                        new Node<>(BLACK, right.left.right, right.data, right.right));
+            }
+        }
+        return new Node<>(BLACK, left, data, right);
+    }
+
+    private Node<T> delete(Node<T> node, T data) {
+        if (node == null) {
+            return null;
+        }
+        int compare = data.compareTo(node.data);
+        if (compare < 0) {
+            // removing from a black subtree lowers its black height, which balanceLeft repairs
+            Node<T> left = delete(node.left, data);
+            return isBlack(node.left) ? balanceLeft(left, node.data, node.right)
+                    : new Node<>(RED, left, node.data, node.right);
+        }
+        if (compare > 0) {
+            Node<T> right = delete(node.right, data);
+            return isBlack(node.right) ? balanceRight(node.left, node.data, right)
+                    : new Node<>(RED, node.left, node.data, right);
+        }
+        return fuse(node.left, node.right);
+    }
+
+    /**
+     * Builds a node whose left subtree has a black height one less than its
+     * right subtree.
+     */
+    private Node<T> balanceLeft(Node<T> left, T data, Node<T> right) {
+        if (isRed(left)) {
+            return new Node<>(RED, blacken(left), data, right);
+        }
+        if (isBlack(right)) {
+            return balance(left, data, redden(right));
+        }
+        if (isRed(right) && isBlack(right.left)) {
+            Node<T> rightLeft = right.left;
+            return new Node<>(RED, new Node<>(BLACK, left, data, rightLeft.left), rightLeft.data,
+                    balance(rightLeft.right, right.data, redden(right.right)));
+        }
+        throw new IllegalStateException("Tree is not a valid red-black tree");
+    }
+
+    /**
+     * Builds a node whose right subtree has a black height one less than its
+     * left subtree.
+     */
+    private Node<T> balanceRight(Node<T> left, T data, Node<T> right) {
+        if (isRed(right)) {
+            return new Node<>(RED, left, data, blacken(right));
+        }
+        if (isBlack(left)) {
+            return balance(redden(left), data, right);
+        }
+        if (isRed(left) && isBlack(left.right)) {
+            Node<T> leftRight = left.right;
+            return new Node<>(RED, balance(redden(left.left), left.data, leftRight.left), leftRight.data,
+                    new Node<>(BLACK, leftRight.right, data, right));
+        }
+        throw new IllegalStateException("Tree is not a valid red-black tree");
+    }
+
+    private Node<T> redden(Node<T> node) {
+        if (!isBlack(node)) throw new IllegalStateException("Tree is not a valid red-black tree");
+        return new Node<>(RED, node.left, node.data, node.right);
+    }
+
+    /**
+     * Joins the two subtrees of a removed node, where every value of left is
+     * smaller than every value of right.
+     */
+    private Node<T> fuse(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (isRed(left) && isRed(right)) {
+            Node<T> middle = fuse(left.right, right.left);
+            if (isRed(middle)) {
+                return new Node<>(RED, new Node<>(RED, left.left, left.data, middle.left), middle.data,
+                        new Node<>(RED, middle.right, right.data, right.right));
+            }
+            return new Node<>(RED, left.left, left.data, new Node<>(RED, middle, right.data, right.right));
+        }
+        if (isBlack(left) && isBlack(right)) {
+            Node<T> middle = fuse(left.right, right.left);
+            if (isRed(middle)) {
+                return new Node<>(RED, new Node<>(BLACK, left.left, left.data, middle.left), middle.data,
+                        new Node<>(BLACK, middle.right, right.data, right.right));
+            }
+            return balanceLeft(left.left, left.data, new Node<>(BLACK, middle, right.data, right.right));
+        }
+        if (isRed(right)) {
+            return new Node<>(RED, fuse(left, right.left), right.data, right.right);
+        }
+        return new Node<>(RED, left.left, left.data, fuse(left.right, right));
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that snapshots of a PersistentRedBlackTree keep the values the tree
+ * held when they were taken: while the tree and the snapshots are changed at
+ * random, and while another thread keeps writing to the tree. Every version is
+ * also checked to be a valid red-black tree.
+ */
+public class PersistentRedBlackTreeTest {
+
+    // returns the black height of the subtree, throws when it breaks an invariant
+    static int check(PersistentRedBlackTree.Node<Integer> node, boolean parentRed, Integer low, Integer high) {
+        if (node == null) {
+            return 1;
+        }
+        if ((low != null && node.data <= low) || (high != null && node.data >= high)) {
+            throw new AssertionError(node.data + " is out of order");
+        }
+        boolean red = node.blackHeight == 0;
+        if (red && parentRed) {
+            throw new AssertionError("red node " + node.data + " has a red parent");
+        }
+        int left = check(node.left, red, low, node.data);
+        int right = check(node.right, red, node.data, high);
+        if (left != right) {
+            throw new AssertionError("black heights of " + node.data + " differ: " + left + " and " + right);
+        }
+        return left + node.blackHeight;
+    }
+
+    static void validate(PersistentRedBlackTree<Integer> tree, TreeSet<Integer> expected) {
+        PersistentRedBlackTree.Version<Integer> version = tree.current;
+        if (version.root != null && version.root.blackHeight != 1) {
+            throw new AssertionError("root is red");
+        }
+        check(version.root, false, null, null);
+        if (tree.size() != expected.size()) {
+            throw new AssertionError("size " + tree.size() + " instead of " + expected.size());
+        }
+        List<Integer> values = new ArrayList<>();
+        for (Integer value : tree) {
+            values.add(value);
+        }
+        if (!values.equals(new ArrayList<>(expected))) {
+            throw new AssertionError("values differ from the expected ones");
+        }
+    }
+
+    // inserts the value when it is missing and removes it otherwise, in both
+    static void toggle(PersistentRedBlackTree<Integer> tree, TreeSet<Integer> expected, int value) {
+        if (expected.add(value)) {
+            tree.insert(value);
+        } else {
+            expected.remove(value);
+            tree.remove(value);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 11);
+        int snapshots = 0;
+        for (int round = 0; round < 100; round++) {
+            int range = 1 + random.nextInt(round < 50 ? 60 : 3000);
+            PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+            TreeSet<Integer> expected = new TreeSet<>();
+            List<PersistentRedBlackTree<Integer>> taken = new ArrayList<>();
+            List<TreeSet<Integer>> takenValues = new ArrayList<>();
+            for (int step = 0; step < 500; step++) {
+                toggle(tree, expected, random.nextInt(range));
+                if (random.nextInt(25) == 0) {
+                    taken.add(tree.snapshot());
+                    takenValues.add(new TreeSet<>(expected));
+                }
+                // a snapshot is a tree of its own, changing it leaves the original alone
+                if (!taken.isEmpty() && random.nextInt(10) == 0) {
+                    int index = random.nextInt(taken.size());
+                    toggle(taken.get(index), takenValues.get(index), random.nextInt(range));
+                }
+            }
+            validate(tree, expected);
+            for (int i = 0; i < taken.size(); i++) {
+                validate(taken.get(i), takenValues.get(i));
+            }
+            snapshots += taken.size();
+        }
+
+        // snapshots taken while another thread writes hold a version that never changes
+        PersistentRedBlackTree<Integer> shared = new PersistentRedBlackTree<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+        Thread writer = new Thread(() -> {
+            Random writes = new Random(3);
+            TreeSet<Integer> values = new TreeSet<>();
+            while (!done.get()) {
+                toggle(shared, values, writes.nextInt(5000));
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                PersistentRedBlackTree<Integer> snapshot = shared.snapshot();
+                TreeSet<Integer> values = new TreeSet<>();
+                for (Integer value : snapshot) {
+                    values.add(value);
+                }
+                validate(snapshot, values);
+                Thread.yield();
+                validate(snapshot, values);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        System.out.println(snapshots + " snapshots and 2000 concurrent snapshots kept their values");
+    }
+}
@@ -1,6 +1,20 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Red-Black Tree implementation with a Node inner class for representing
@@ -9,7 +23,7 @@ import java.util.Stack;
  * In this activity, we will start with implementing rotations for the binary
  * search tree insert algorithm.
  */
-public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterface<T> {
+public class RedBlackTree<T extends Comparable<T>> implements OrderedTreeInterface<T> {
 
     /**
      * This class represents a node holding a single value within a binary tree.
@@ -27,9 +41,12 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         // node type's data field.
         @SuppressWarnings("unchecked")
         public Node<T>[] context = (Node<T>[])new Node[3];
+        // number of nodes in the subtree rooted at this node, including itself
+        public int subtreeSize;
         public Node(T data) { 
             this.data = data; 
             blackHeight = 0;
+            subtreeSize = 1;
         }
         
         /**
@@ -44,6 +61,16 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
 
     protected Node<T> root; // reference to root node of tree, null when empty
     protected int size = 0; // the number of values in the tree
+    protected int modCount = 0; // number of structural changes, used by iterators to detect them
+    protected TreeMetrics metrics = null; // counts comparisons and fixups when set
+
+    /**
+     * Makes this tree count its work in metrics, or stop counting when metrics
+     * is null. Must not be called while other threads use the tree.
+     */
+    public void setMetrics(TreeMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     protected void enforceRBTreePropertiesAfterInsert(Node<T> newRedNode) {
         // In the case that the newly inserted node is the root
@@ -70,6 +97,7 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
 
         // If parent of newly inserted red node is black, then we can just be done
         if (parent.blackHeight == 1) {
+            if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.INSERT_BLACK_PARENT, 0, 0);
             return;
         }
 
@@ -78,6 +106,11 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
 
             // If the UNCLE is BLACK OR NULL, then we do the suitable rotation and recolor; there are four scenarios
             if (uncle == null || uncle.blackHeight == 1) {
+                if (metrics != null) {
+                    boolean inner = newRedNode.isRightChild() != parent.isRightChild();
+                    metrics.recordFixup(inner ? TreeMetrics.Fixup.INSERT_INNER_CHILD : TreeMetrics.Fixup.INSERT_OUTER_CHILD,
+                            inner ? 2 : 1, 2);
+                }
                 // Parent is a left child
                 if (!parent.isRightChild()) {
                     // Newly inserted node is a right child
@@ -119,6 +152,9 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
                 if (!grandparent.equals(root) && grandparent != null) {
                     grandparent.blackHeight = 0;
                 }
+                if (metrics != null) {
+                    metrics.recordFixup(TreeMetrics.Fixup.INSERT_RED_UNCLE, 0, grandparent.equals(root) ? 2 : 3);
+                }
 
                 // It is possible that there is a red-red conflict now with the recoloring of the grandparent
                 // We recursively call this function but with the grandparent considered the newly added red node
@@ -148,7 +184,7 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         Node<T> newNode = new Node<>(data);
         if (this.root == null) {
             // add first node to an empty tree
-            root = newNode; size++; enforceRBTreePropertiesAfterInsert(root); return true;
+            root = newNode; size++; modCount++; enforceRBTreePropertiesAfterInsert(root); return true;
         } else {
             // insert into subtree
             Node<T> current = this.root;
@@ -163,6 +199,8 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
                         current.context[1] = newNode;
                         newNode.context[0] = current;
                         this.size++;
+                        this.modCount++;
+                        updateAncestorSizes(newNode, 1);
                         enforceRBTreePropertiesAfterInsert(newNode); // NEW CODE
                         return true;
                     } else {
@@ -176,6 +214,8 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
                         current.context[2] = newNode;
                         newNode.context[0] = current;
                         this.size++;
+                        this.modCount++;
+                        updateAncestorSizes(newNode, 1);
                         enforceRBTreePropertiesAfterInsert(newNode); // NEW CODE
                         return true;
                     } else {
@@ -187,6 +227,582 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         }
     }
 
+    /**
+     * Replaces the contents of this tree with the values produced by the
+     * provided iterator, which must return exactly size values in strictly
+     * increasing order. The tree is built bottom up in linear time without any
+     * rotations: it is perfectly balanced, every level is black except the
+     * deepest one when that level is only partially filled, which is red.
+     * The tree is left unchanged when an exception is thrown.
+     * @param sortedData iterator over the values in increasing order
+     * @param size the number of values the iterator will return
+     * @throws NullPointerException when a value is null
+     * @throws IllegalArgumentException when the values are not strictly
+     *      increasing or the iterator returns fewer than size values
+     */
+    public void buildFromSorted(Iterator<T> sortedData, int size)
+            throws NullPointerException, IllegalArgumentException {
+        if (size < 0) throw new IllegalArgumentException("Size cannot be negative: " + size);
+        this.root = buildBalanced(sortedData, size);
+        this.size = size;
+        this.modCount++;
+    }
+
+    /**
+     * Helper method that links size values of sortedData into a balanced
+     * subtree like buildFromSorted, and returns its root.
+     */
+    private Node<T> buildBalanced(Iterator<T> sortedData, int size) {
+        // the deepest level is the only one that may be incomplete, its nodes are red
+        int redLevel = 0;
+        for (int m = size - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        SortedBuildState<T> state = new SortedBuildState<>(sortedData);
+        Node<T> newRoot = buildFromSortedHelper(0, 0, size - 1, redLevel, state);
+        if (newRoot != null) {
+            newRoot.context[0] = null;
+            newRoot.blackHeight = 1;
+        }
+        return newRoot;
+    }
+
+    /**
+     * Loads all of the provided values into this tree. Values that are already
+     * sorted are linked into a balanced tree in linear time, otherwise they are
+     * sorted first. When this tree already holds values, the two sorted
+     * sequences are merged before the tree is rebuilt.
+     * @param data the values to add to this tree
+     * @throws NullPointerException when a value is null
+     * @throws IllegalArgumentException when a value is contained twice, or
+     *      is already contained in the tree
+     */
+    public void bulkLoad(Iterable<T> data) throws NullPointerException, IllegalArgumentException {
+        DictionaryEvents.BulkMutation event = new DictionaryEvents.BulkMutation();
+        event.begin();
+        int sizeBefore = size;
+        ArrayList<T> values = new ArrayList<>();
+        boolean sorted = true;
+        T previous = null;
+        for (T value : data) {
+            if (value == null) throw new NullPointerException(
+                    "This RedBlackTree cannot store null references.");
+            if (previous != null && previous.compareTo(value) >= 0) {
+                sorted = false;
+            }
+            values.add(value);
+            previous = value;
+        }
+        int valueCount = values.size();
+        if (!sorted) {
+            DictionaryEvents.LoadPhase sort = new DictionaryEvents.LoadPhase();
+            sort.begin();
+            values.sort(null);
+            sort.commit("sort", null, valueCount, 0, 1);
+        }
+        if (this.root != null) {
+            values = mergeSorted(inOrderList(), values);
+        }
+        buildFromSorted(values.iterator(), values.size());
+        commitMutation(event, "bulkLoad", valueCount, sizeBefore);
+    }
+
+    /**
+     * Mutable state shared by the recursive calls of buildFromSortedHelper.
+     */
+    private static class SortedBuildState<T> {
+        private final Iterator<T> source;
+        private T previous;
+        private SortedBuildState(Iterator<T> source) { this.source = source; }
+    }
+
+    /**
+     * Builds the subtree for positions lo through hi (inclusive) of the sorted
+     * sequence, consuming its values from the iterator in order.
+     */
+    private Node<T> buildFromSortedHelper(int level, int lo, int hi, int redLevel, SortedBuildState<T> state) {
+        if (hi < lo) return null;
+        int mid = (lo + hi) >>> 1;
+        Node<T> left = buildFromSortedHelper(level + 1, lo, mid - 1, redLevel, state);
+
+        if (!state.source.hasNext()) throw new IllegalArgumentException(
+                "Sorted input ended after " + mid + " values");
+        T data = state.source.next();
+        if (data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        if (state.previous != null) {
+            int compare = state.previous.compareTo(data);
+            if (compare == 0) throw new IllegalArgumentException(
+                    "This RedBlackTree already contains value " + data.toString());
+            if (compare > 0) throw new IllegalArgumentException(
+                    "Input is not sorted at value " + data.toString());
+        }
+        state.previous = data;
+
+        Node<T> middle = new Node<>(data);
+        middle.blackHeight = (level == redLevel) ? 0 : 1;
+        middle.subtreeSize = hi - lo + 1;
+        if (left != null) {
+            middle.context[1] = left;
+            left.context[0] = middle;
+        }
+        Node<T> right = buildFromSortedHelper(level + 1, mid + 1, hi, redLevel, state);
+        if (right != null) {
+            middle.context[2] = right;
+            right.context[0] = middle;
+        }
+        return middle;
+    }
+
+    /**
+     * Helper method that collects the values of this tree in order.
+     * @return list with all values of this tree in increasing order
+     */
+    protected ArrayList<T> inOrderList() {
+        ArrayList<T> values = new ArrayList<>(size);
+        Stack<Node<T>> nodeStack = new Stack<>();
+        Node<T> current = this.root;
+        while (!nodeStack.isEmpty() || current != null) {
+            if (current == null) {
+                Node<T> popped = nodeStack.pop();
+                values.add(popped.data);
+                current = popped.context[2];
+            } else {
+                nodeStack.add(current);
+                current = current.context[1];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Helper method that merges two sorted lists into one sorted list.
+     * @throws IllegalArgumentException when both lists contain the same value
+     */
+    private ArrayList<T> mergeSorted(ArrayList<T> first, ArrayList<T> second) {
+        ArrayList<T> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0, j = 0;
+        while (i < first.size() && j < second.size()) {
+            int compare = first.get(i).compareTo(second.get(j));
+            if (compare == 0) throw new IllegalArgumentException(
+                    "This RedBlackTree already contains value " + second.get(j).toString());
+            merged.add(compare < 0 ? first.get(i++) : second.get(j++));
+        }
+        while (i < first.size()) merged.add(first.get(i++));
+        while (j < second.size()) merged.add(second.get(j++));
+        return merged;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Batch updates with join-based set operations
+
+    /**
+     * Batches with at least this many values are split between the threads of
+     * the common fork/join pool.
+     */
+    protected static final int PARALLEL_BATCH_THRESHOLD = 1024;
+
+    /**
+     * Inserts all values that are not contained yet as the union of this tree
+     * with the sorted batch: the tree is split at the middle value of the
+     * batch, both halves are united with their half of the batch, and the
+     * results are joined again with the middle value. This takes
+     * O(m log(n / m + 1)) steps for m values and n nodes instead of m separate
+     * insertions, and halves that are large enough are united in parallel.
+     * A value that is already contained, or that appeared earlier in the
+     * batch, is not inserted.
+     * @param values the values to insert, in any order
+     * @return for each value in turn whether it was inserted
+     * @throws NullPointerException when a value is null, before anything is inserted
+     */
+    @Override
+    public boolean[] insertAll(Collection<? extends T> values) throws NullPointerException {
+        DictionaryEvents.BulkMutation event = new DictionaryEvents.BulkMutation();
+        event.begin();
+        int sizeBefore = size;
+        SortedBatch<T> batch = new SortedBatch<>(values);
+        boolean[] applied = new boolean[batch.values.length];
+        Subtree<T> tree = new Subtree<>(root, blackHeightOf(root));
+        Node<T> newRoot = runBatch(new UnionTask(tree, batch.values, 0, batch.values.length, applied));
+        boolean[] outcomes = finishBatch(newRoot, batch, applied);
+        commitMutation(event, "insertAll", values.size(), sizeBefore);
+        return outcomes;
+    }
+
+    /**
+     * Removes all values that are contained as the difference of this tree
+     * and the sorted batch, in the same way as insertAll.
+     * @param values the values to remove, in any order
+     * @return for each value in turn whether it was removed
+     * @throws NullPointerException when a value is null, before anything is removed
+     */
+    @Override
+    public boolean[] removeAll(Collection<? extends T> values) throws NullPointerException {
+        DictionaryEvents.BulkMutation event = new DictionaryEvents.BulkMutation();
+        event.begin();
+        int sizeBefore = size;
+        SortedBatch<T> batch = new SortedBatch<>(values);
+        boolean[] applied = new boolean[batch.values.length];
+        Subtree<T> tree = new Subtree<>(root, blackHeightOf(root));
+        Node<T> newRoot = runBatch(new DifferenceTask(tree, batch.values, 0, batch.values.length, applied));
+        boolean[] outcomes = finishBatch(newRoot, batch, applied);
+        commitMutation(event, "removeAll", values.size(), sizeBefore);
+        return outcomes;
+    }
+
+    /**
+     * The distinct values of a batch in increasing order, with the position of
+     * each value of the batch among them, or -1 for repeated values.
+     */
+    private static class SortedBatch<T extends Comparable<T>> {
+        private final T[] values;
+        private final int[] positions;
+
+        private SortedBatch(Collection<? extends T> batch) {
+            T[] input = batch.toArray(RedBlackTree.<T>newArray(0));
+            Integer[] order = new Integer[input.length];
+            for (int i = 0; i < input.length; i++) {
+                if (input[i] == null) throw new NullPointerException(
+                        "This RedBlackTree cannot store null references.");
+                order[i] = i;
+            }
+            // stable, so the first of equal values comes first
+            Arrays.sort(order, (a, b) -> input[a].compareTo(input[b]));
+            T[] distinct = newArray(input.length);
+            positions = new int[input.length];
+            int count = 0;
+            for (Integer index : order) {
+                if (count > 0 && distinct[count - 1].compareTo(input[index]) == 0) {
+                    positions[index] = -1;
+                } else {
+                    positions[index] = count;
+                    distinct[count++] = input[index];
+                }
+            }
+            values = Arrays.copyOf(distinct, count);
+        }
+    }
+
+    /**
+     * Creates an array for values of type T. T is erased to Comparable, so the
+     * array is a Comparable[] that every value of the tree can be stored in.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> T[] newArray(int length) {
+        return (T[]) new Comparable<?>[length];
+    }
+
+    /**
+     * Helper method that records a bulk change that started at event when
+     * Flight Recorder is recording it. The number of changed values is the
+     * change of the size of the tree.
+     */
+    private void commitMutation(DictionaryEvents.BulkMutation event, String operation, int valueCount,
+            int sizeBefore) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.valueCount = valueCount;
+            event.changedCount = Math.abs(size - sizeBefore);
+            event.treeSize = size;
+            event.blackHeight = blackHeightOf(root);
+            event.commit();
+        }
+    }
+
+    /**
+     * Helper method that runs a batch task, in the common pool when it is large.
+     */
+    private Node<T> runBatch(RecursiveTask<Subtree<T>> task) {
+        return (size >= PARALLEL_BATCH_THRESHOLD ? ForkJoinPool.commonPool().invoke(task) : task.invoke()).root;
+    }
+
+    /**
+     * Helper method that makes newRoot the root of this tree, and returns the
+     * outcome of each value of the batch.
+     */
+    private boolean[] finishBatch(Node<T> newRoot, SortedBatch<T> batch, boolean[] applied) {
+        if (newRoot != null) {
+            newRoot.context[0] = null;
+            newRoot.blackHeight = 1;
+        }
+        this.root = newRoot;
+        this.size = sizeOf(newRoot);
+        this.modCount++;
+        boolean[] outcomes = new boolean[batch.positions.length];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = batch.positions[i] >= 0 && applied[batch.positions[i]];
+        }
+        return outcomes;
+    }
+
+    /**
+     * A detached subtree whose root may be red, with the number of black
+     * nodes on every path from its root down to an empty child.
+     */
+    private static class Subtree<T> {
+        private final Node<T> root;
+        private final int height;
+
+        private Subtree(Node<T> root, int height) {
+            this.root = root;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Unites a subtree with the values from..to (exclusive) of the sorted
+     * batch, and records in applied which of them were added.
+     */
+    private class UnionTask extends RecursiveTask<Subtree<T>> {
+        private static final long serialVersionUID = 1L;
+        private final Subtree<T> tree;
+        private final T[] values;
+        private final int from, to;
+        private final boolean[] applied;
+
+        private UnionTask(Subtree<T> tree, T[] values, int from, int to, boolean[] applied) {
+            this.tree = tree; this.values = values; this.from = from; this.to = to; this.applied = applied;
+        }
+
+        @Override
+        protected Subtree<T> compute() {
+            if (from >= to) return tree;
+            if (tree.root == null) {
+                Arrays.fill(applied, from, to, true);
+                Node<T> built = buildBalanced(Arrays.asList(values).subList(from, to).iterator(), to - from);
+                return new Subtree<>(built, blackHeightOf(built));
+            }
+            int mid = (from + to) >>> 1;
+            Split<T> parts = split(tree, values[mid]);
+            applied[mid] = parts.found == null;
+            Node<T> middle = parts.found != null ? parts.found : new Node<>(values[mid]);
+            UnionTask left = new UnionTask(parts.left, values, from, mid, applied);
+            UnionTask right = new UnionTask(parts.right, values, mid + 1, to, applied);
+            if (to - from >= PARALLEL_BATCH_THRESHOLD) {
+                // the halves share no nodes, so they can be united at the same time
+                left.fork();
+                Subtree<T> rightTree = right.compute();
+                return joinTrees(left.join(), middle, rightTree);
+            }
+            return joinTrees(left.compute(), middle, right.compute());
+        }
+    }
+
+    /**
+     * Removes the values from..to (exclusive) of the sorted batch from a
+     * subtree, and records in applied which of them were removed.
+     */
+    private class DifferenceTask extends RecursiveTask<Subtree<T>> {
+        private static final long serialVersionUID = 1L;
+        private final Subtree<T> tree;
+        private final T[] values;
+        private final int from, to;
+        private final boolean[] applied;
+
+        private DifferenceTask(Subtree<T> tree, T[] values, int from, int to, boolean[] applied) {
+            this.tree = tree; this.values = values; this.from = from; this.to = to; this.applied = applied;
+        }
+
+        @Override
+        protected Subtree<T> compute() {
+            if (from >= to || tree.root == null) return tree;
+            int mid = (from + to) >>> 1;
+            Split<T> parts = split(tree, values[mid]);
+            applied[mid] = parts.found != null;
+            DifferenceTask left = new DifferenceTask(parts.left, values, from, mid, applied);
+            DifferenceTask right = new DifferenceTask(parts.right, values, mid + 1, to, applied);
+            if (to - from >= PARALLEL_BATCH_THRESHOLD) {
+                left.fork();
+                Subtree<T> rightTree = right.compute();
+                return joinTrees(left.join(), rightTree);
+            }
+            return joinTrees(left.compute(), right.compute());
+        }
+    }
+
+    /**
+     * The result of splitting a subtree at a value: the subtrees of the smaller
+     * and of the larger values, and the detached node holding the value or null.
+     */
+    private static class Split<T> {
+        private Subtree<T> left, right;
+        private Node<T> found;
+    }
+
+    /**
+     * Helper method that splits a subtree at value. The nodes of the subtree
+     * are reused for the new subtrees.
+     */
+    private Split<T> split(Subtree<T> tree, T value) {
+        Node<T> node = tree.root;
+        if (node == null) {
+            Split<T> parts = new Split<>();
+            parts.left = tree;
+            parts.right = tree;
+            return parts;
+        }
+        int childHeight = tree.height - (isRed(node) ? 0 : 1);
+        Subtree<T> left = new Subtree<>(detach(node.context[1]), childHeight);
+        Subtree<T> right = new Subtree<>(detach(node.context[2]), childHeight);
+        int compare = value.compareTo(node.data);
+        if (compare == 0) {
+            Split<T> parts = new Split<>();
+            node.context[1] = null;
+            node.context[2] = null;
+            node.subtreeSize = 1;
+            parts.left = left;
+            parts.found = node;
+            parts.right = right;
+            return parts;
+        } else if (compare < 0) {
+            Split<T> parts = split(left, value);
+            parts.right = joinTrees(parts.right, node, right);
+            return parts;
+        } else {
+            Split<T> parts = split(right, value);
+            parts.left = joinTrees(left, node, parts.left);
+            return parts;
+        }
+    }
+
+    /**
+     * Helper method that joins two subtrees, all values of left being smaller
+     * than all values of right, by splitting off the largest value of left.
+     */
+    private Subtree<T> joinTrees(Subtree<T> left, Subtree<T> right) {
+        if (left.root == null) return right;
+        if (right.root == null) return left;
+        Node<T> last = left.root;
+        while (last.context[2] != null) last = last.context[2];
+        Split<T> parts = split(left, last.data);
+        return joinTrees(parts.left, parts.found, right);
+    }
+
+    /**
+     * Helper method that joins two subtrees and a middle node whose value lies
+     * between them into one red-black tree, in O(difference of black heights)
+     * steps: the middle node is linked in as a red node where the spine of the
+     * higher subtree reaches the black height of the lower one, and red nodes
+     * following each other are fixed with a rotation on the way back up.
+     */
+    private Subtree<T> joinTrees(Subtree<T> left, Node<T> middle, Subtree<T> right) {
+        middle.context[0] = null;
+        if (left.height > right.height) {
+            Node<T> joined = joinRight(left.root, left.height, middle, right.root, right.height);
+            joined.context[0] = null;
+            if (isRed(joined) && isRed(joined.context[2])) {
+                joined.blackHeight = 1;
+                return new Subtree<>(joined, left.height + 1);
+            }
+            return new Subtree<>(joined, left.height);
+        } else if (right.height > left.height) {
+            Node<T> joined = joinLeft(left.root, left.height, middle, right.root, right.height);
+            joined.context[0] = null;
+            if (isRed(joined) && isRed(joined.context[1])) {
+                joined.blackHeight = 1;
+                return new Subtree<>(joined, right.height + 1);
+            }
+            return new Subtree<>(joined, right.height);
+        }
+        boolean black = isRed(left.root) || isRed(right.root);
+        middle.blackHeight = black ? 1 : 0;
+        link(middle, left.root, right.root);
+        return new Subtree<>(middle, left.height + (black ? 1 : 0));
+    }
+
+    /**
+     * Helper method of join for a left subtree that is higher than the right one.
+     */
+    private Node<T> joinRight(Node<T> left, int leftHeight, Node<T> middle, Node<T> right, int rightHeight) {
+        if (!isRed(left) && leftHeight == rightHeight) {
+            middle.blackHeight = 0;
+            link(middle, left, right);
+            return middle;
+        }
+        Node<T> child = joinRight(left.context[2], leftHeight - (isRed(left) ? 0 : 1), middle, right, rightHeight);
+        left.context[2] = child;
+        child.context[0] = left;
+        updateSize(left);
+        if (!isRed(left) && isRed(child) && isRed(child.context[2])) {
+            child.context[2].blackHeight = 1;
+            return rotateUp(child, left);
+        }
+        return left;
+    }
+
+    /**
+     * Helper method of join for a right subtree that is higher than the left one.
+     */
+    private Node<T> joinLeft(Node<T> left, int leftHeight, Node<T> middle, Node<T> right, int rightHeight) {
+        if (!isRed(right) && leftHeight == rightHeight) {
+            middle.blackHeight = 0;
+            link(middle, left, right);
+            return middle;
+        }
+        Node<T> child = joinLeft(left, leftHeight, middle, right.context[1], rightHeight - (isRed(right) ? 0 : 1));
+        right.context[1] = child;
+        child.context[0] = right;
+        updateSize(right);
+        if (!isRed(right) && isRed(child) && isRed(child.context[1])) {
+            child.context[1].blackHeight = 1;
+            return rotateUp(child, right);
+        }
+        return right;
+    }
+
+    /**
+     * Helper method that rotates child above parent within a detached subtree,
+     * and returns child as the new root of the subtree without a parent.
+     */
+    private Node<T> rotateUp(Node<T> child, Node<T> parent) {
+        if (parent.context[2] == child) {
+            parent.context[2] = child.context[1];
+            if (child.context[1] != null) child.context[1].context[0] = parent;
+            child.context[1] = parent;
+        } else {
+            parent.context[1] = child.context[2];
+            if (child.context[2] != null) child.context[2].context[0] = parent;
+            child.context[2] = parent;
+        }
+        parent.context[0] = child;
+        child.context[0] = null;
+        updateSize(parent);
+        updateSize(child);
+        return child;
+    }
+
+    /**
+     * Helper method that makes left and right the children of node.
+     */
+    private void link(Node<T> node, Node<T> left, Node<T> right) {
+        node.context[1] = left;
+        node.context[2] = right;
+        if (left != null) left.context[0] = node;
+        if (right != null) right.context[0] = node;
+        updateSize(node);
+    }
+
+    private static <T> Node<T> detach(Node<T> node) {
+        if (node != null) node.context[0] = null;
+        return node;
+    }
+
+    private static boolean isRed(Node<?> node) {
+        return node != null && node.blackHeight == 0;
+    }
+
+    /**
+     * Helper method that returns the number of black nodes on every path from
+     * node down to an empty child, counting node itself.
+     */
+    private static int blackHeightOf(Node<?> node) {
+        int height = 0;
+        for (; node != null; node = node.context[1]) {
+            if (node.blackHeight != 0) height++;
+        }
+        return height;
+    }
+
     /**
      * Performs the rotation operation on the provided nodes within this tree.
      * When the provided child is a left child of the provided parent, this
@@ -212,16 +828,14 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         if (child.isRightChild() && child.context[0] == parent) {
             // System.out.println("Performing left rotation");
             
-            // Handling edge case when the subtree/tree resembles a linked list:
-            if (!childHasLeftChild || !childHasRightChild) {
-                child.context[1] = parent;
-                parent.context[2] = null;
-            }
-            else {
-                parent.context[2] = child.context[1];
+            // The left subtree of child (which may be empty) becomes the right subtree of parent
+            parent.context[2] = child.context[1];
+            if (childHasLeftChild) {
                 child.context[1].context[0] = parent;
-                child.context[1] = parent;
             }
+            child.context[1] = parent;
+            updateSize(parent);
+            updateSize(child);
 
             // If parent is not the root:
             if (parent.context[0] != null) {
@@ -247,16 +861,14 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         else if (parent.context[1] == child && child.context[0] == parent) {
             // System.out.println("Performing a right rotation");
             
-            // Handling edge case when the subtree/tree resembles a linked list:
-            if (!childHasRightChild || !childHasLeftChild) {
-                child.context[2] = parent;
-                parent.context[1] = null;
-            }
-            else {
-                parent.context[1] = child.context[2];
+            // The right subtree of child (which may be empty) becomes the left subtree of parent
+            parent.context[1] = child.context[2];
+            if (childHasRightChild) {
                 child.context[2].context[0] = parent;
-                child.context[2] = parent;
             }
+            child.context[2] = parent;
+            updateSize(parent);
+            updateSize(child);
             
             // If parent is not the root:
             if (parent.context[0] != null) {
@@ -280,6 +892,69 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         else throw new IllegalArgumentException("The given child and parent nodes are not related");
     }
 
+    /**
+     * Helper method that returns an upper bound for the number of nodes on any
+     * path from the root: a red-black tree with n nodes is at most 2 log2(n + 1)
+     * high. Searches stop after this many steps, so a reader that races with a
+     * writer (see ConcurrentDictionary) cannot loop forever on a tree that is
+     * in the middle of a rotation.
+     */
+    protected int maxHeight() {
+        return 2 * (33 - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    /**
+     * Returns the number of nodes on the longest path from the root, by
+     * visiting every node.
+     */
+    public int height() {
+        if (root == null) return 0;
+        int height = 0;
+        ArrayDeque<Node<T>> level = new ArrayDeque<>();
+        level.add(root);
+        while (!level.isEmpty()) {
+            height++;
+            for (int i = level.size(); i > 0; i--) {
+                Node<T> node = level.poll();
+                if (node.context[1] != null) level.add(node.context[1]);
+                if (node.context[2] != null) level.add(node.context[2]);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Returns the number of black nodes on every path from the root, found by
+     * following one path in O(log n) steps. No red node has a red child, so
+     * the height of the tree lies between this and twice this.
+     */
+    public int blackHeight() {
+        return blackHeightOf(root);
+    }
+
+    /**
+     * Helper method that returns the number of nodes in the subtree rooted at node.
+     */
+    protected static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.subtreeSize;
+    }
+
+    /**
+     * Helper method that recomputes the subtree size of node from its children.
+     */
+    private void updateSize(Node<T> node) {
+        node.subtreeSize = 1 + sizeOf(node.context[1]) + sizeOf(node.context[2]);
+    }
+
+    /**
+     * Helper method that adds delta to the subtree sizes of all ancestors of node.
+     */
+    private void updateAncestorSizes(Node<T> node, int delta) {
+        for (Node<T> current = node.context[0]; current != null; current = current.context[0]) {
+            current.subtreeSize += delta;
+        }
+    }
+
     /**
      * Get the size of the tree (its number of nodes).
      * @return the number of nodes in the tree
@@ -356,6 +1031,11 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
             }  
             boolean hasRightChild = (nodeWithData.context[2] != null);
             boolean hasLeftChild = (nodeWithData.context[1] != null);
+            // The node that actually leaves the tree is the successor when there are two children.
+            // Its ancestors lose one node, and it counts as empty while any rotations happen
+            Node<T> leavingNode = (hasRightChild && hasLeftChild) ? findMinOfRightSubtree(nodeWithData) : nodeWithData;
+            updateAncestorSizes(leavingNode, -1);
+            leavingNode.subtreeSize -= 1;
             if (hasRightChild && hasLeftChild) {
                 // has 2 children => falls into Case 2
                 enforceRBTreePropertiesAfterRemoveCase2(nodeWithData);
@@ -368,6 +1048,7 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
                 enforceRBTreePropertiesAfterRemoveCase0(nodeWithData);
             }
             this.size--;
+            this.modCount++;
             return true;
         } 
     }
@@ -381,125 +1062,73 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         // Two cases: the node is red, or black
         // If the node is red or the root, then a trivial BST remove can occur
         if (nodeToBeRemoved.blackHeight == 0 || nodeToBeRemoved.equals(root)) {
+            if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_RED_OR_ROOT, 0, 0);
             this.replaceNode(nodeToBeRemoved, null);
+            return;
         }
 
-        // This is where the number of cases increase; node is black, must account for black deficit with double black nodes
-        else if (nodeToBeRemoved.blackHeight == 1 || nodeToBeRemoved.blackHeight == 2) {
-            // Make node to be removed double black
-            nodeToBeRemoved.blackHeight = 2;
+        // The node is black, removing it leaves a black deficit. The node stays in the tree as a
+        // double black node while the deficit is resolved, and is only detached afterwards
+        Node<T> doubleBlack = nodeToBeRemoved;
+        while (doubleBlack != root) {
+            // Get all relationships needed; the sibling cannot be null since the double black
+            // node has a black height of at least one
+            Node<T> doubleBlackParent = doubleBlack.context[0];
+            boolean isRightChild = doubleBlack.isRightChild();
+            Node<T> doubleBlackSibling = isRightChild ? doubleBlackParent.context[1] : doubleBlackParent.context[2];
 
-            // Get all relationships needed
-            Node<T> doubleBlackParent = nodeToBeRemoved.context[0];
-            Node<T> doubleBlackSibling = null;
-            Node<T> doubleBlackSiblingRightChild = null;
-            Node<T> doubleBlackSiblingLeftChild = null;
-            if (nodeToBeRemoved.isRightChild()) {
-                doubleBlackSibling = nodeToBeRemoved.context[0].context[1];
+            // Case 2: sibling is red, rotate it above the parent to get a black sibling (case 1 or 3)
+            if (doubleBlackSibling.blackHeight == 0) {
+                doubleBlackSibling.blackHeight = 1;
+                doubleBlackParent.blackHeight = 0;
+                this.rotate(doubleBlackSibling, doubleBlackParent);
+                if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_RED_SIBLING, 1, 2);
+                continue;
             }
-            else doubleBlackSibling = nodeToBeRemoved.context[0].context[2];
 
-            if (doubleBlackSibling != null) {
-                doubleBlackSiblingRightChild = doubleBlackSibling.context[2];
-                doubleBlackSiblingLeftChild = doubleBlackSibling.context[1];
-            }
+            // The far child of the sibling is on the opposite side of the double black node
+            Node<T> farChild = isRightChild ? doubleBlackSibling.context[1] : doubleBlackSibling.context[2];
+            Node<T> nearChild = isRightChild ? doubleBlackSibling.context[2] : doubleBlackSibling.context[1];
 
-            if (doubleBlackSiblingRightChild == null || doubleBlackSiblingLeftChild == null) {
-                if (doubleBlackSiblingRightChild == null) {
-                    doubleBlackSiblingRightChild = new Node<T>(null);
-                    doubleBlackSiblingRightChild.blackHeight = 1;
-                }
-                if (doubleBlackSiblingLeftChild == null) {
-                    doubleBlackSiblingLeftChild = new Node<T>(null);
-                    doubleBlackSiblingLeftChild.blackHeight = 1;
-                }
+            // Case 1: sibling is black with a red far child, one rotation resolves the deficit
+            if (farChild != null && farChild.blackHeight == 0) {
+                doubleBlackSibling.blackHeight = doubleBlackParent.blackHeight;
+                doubleBlackParent.blackHeight = 1;
+                farChild.blackHeight = 1;
+                this.rotate(doubleBlackSibling, doubleBlackParent);
+                if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_FAR_RED_NEPHEW, 1, 3);
+                break;
             }
 
-            // There are now 3 (technically 3.5) cases to consider in this section
-
-            // Case 1 and Case 3: Double Black Sibling is Black
-            if (doubleBlackSibling == null || doubleBlackSibling.blackHeight == 1) {
-                // Case 1 Continued: Sibling has at least 1 red child
-                if (doubleBlackSiblingRightChild.blackHeight == 0 || doubleBlackSiblingLeftChild.blackHeight == 0) {
-                    // Account for Case 1.5:
-                    if (!nodeToBeRemoved.isRightChild()) {
-                        if (doubleBlackSiblingLeftChild.blackHeight == 0 && doubleBlackSiblingRightChild.blackHeight == 1) {
-                            // adjust colors
-                            int leftChildOldHeight = doubleBlackSiblingLeftChild.blackHeight;
-                            doubleBlackSiblingLeftChild.blackHeight = doubleBlackSibling.blackHeight;
-                            doubleBlackSibling.blackHeight = leftChildOldHeight;
-                            this.rotate(doubleBlackSiblingLeftChild, doubleBlackSibling);
-                        }
-
-                        // Main code
-                        int siblingOldHeight = doubleBlackSibling.blackHeight;
-                        doubleBlackSibling.blackHeight = doubleBlackParent.blackHeight;
-                        doubleBlackParent.blackHeight = siblingOldHeight;
-                        this.rotate(doubleBlackSibling, doubleBlackParent);
-                        doubleBlackSiblingRightChild.blackHeight = 1;
-                        doubleBlackParent.context[1] = null;
-                    }
-                    else {
-                        if (doubleBlackSiblingRightChild.blackHeight == 0 && doubleBlackSiblingLeftChild.blackHeight == 1) {
-                            // adjust colors
-                            int rightChildOldHeight = doubleBlackSiblingRightChild.blackHeight;
-                            doubleBlackSiblingRightChild.blackHeight = doubleBlackSibling.blackHeight;
-                            doubleBlackSibling.blackHeight = rightChildOldHeight;
-                            this.rotate(doubleBlackSiblingLeftChild, doubleBlackSibling);
-                        }
-
-                        // Main code
-                        int siblingOldHeight = doubleBlackSibling.blackHeight;
-                        doubleBlackSibling.blackHeight = doubleBlackParent.blackHeight;
-                        doubleBlackParent.blackHeight = siblingOldHeight;
-                        this.rotate(doubleBlackSibling, doubleBlackParent);
-                        doubleBlackSiblingLeftChild.blackHeight = 1;
-                        doubleBlackParent.context[2] = null;
-                    }
-                }
+            // Case 1.5: sibling is black with only a red near child, rotate it into the far position
+            if (nearChild != null && nearChild.blackHeight == 0) {
+                nearChild.blackHeight = 1;
+                doubleBlackSibling.blackHeight = 0;
+                this.rotate(nearChild, doubleBlackSibling);
+                if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_NEAR_RED_NEPHEW, 1, 2);
+                continue;
+            }
 
-                // Case 3 Continued: Sibling has no red children
-                else if (doubleBlackSiblingRightChild.blackHeight == 1 && doubleBlackSiblingLeftChild.blackHeight == 1) {
-                    doubleBlackSibling.blackHeight = 0;
-                    doubleBlackParent.blackHeight++;
-                    if (doubleBlackParent.blackHeight == 1) {
-                        if (nodeToBeRemoved.isRightChild()) {
-                            doubleBlackParent.context[2] = null;
-                        }
-                        doubleBlackParent.context[1] = null;
-                        return; 
-                    }
-                    else {
-                        if (nodeToBeRemoved.isRightChild()) {
-                            doubleBlackParent.context[2] = null;
-                        }
-                        doubleBlackParent.context[1] = null;
-                        if (doubleBlackParent.equals(root)) {
-                            doubleBlackParent.blackHeight = 1;
-                            return;
-                        }
-                        // Problem moved up further in the tree, must recurse
-                        enforceRBTreePropertiesAfterRemoveCase0(doubleBlackParent);
-                    }
-                }
-            }      
-            
-            // Case 2: Double Black Sibling is red and its children are black
-            else if (doubleBlackSibling.blackHeight == 0 && doubleBlackSiblingRightChild.blackHeight == 1 && doubleBlackSiblingLeftChild.blackHeight == 1) {
-                int oldSiblingHeight = doubleBlackSibling.blackHeight;
-                doubleBlackSibling.blackHeight = doubleBlackParent.blackHeight;
-                doubleBlackParent.blackHeight = oldSiblingHeight;
-                this.rotate(doubleBlackSibling, doubleBlackParent);
-                // at this point we have pushed ourselves into either case 1 or 3
-                enforceRBTreePropertiesAfterRemoveCase0(nodeToBeRemoved);
+            // Case 3: sibling has no red children, recolor it red and push the deficit to the parent
+            doubleBlackSibling.blackHeight = 0;
+            if (doubleBlackParent.blackHeight == 0) {
+                doubleBlackParent.blackHeight = 1;
+                if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_BLACK_NEPHEWS, 0, 2);
+                break;
             }
+            if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_BLACK_NEPHEWS, 0, 1);
+            // Problem moved up further in the tree
+            doubleBlack = doubleBlackParent;
         }
+        root.blackHeight = 1;
+        this.replaceNode(nodeToBeRemoved, null);
     }
 
     /**
      * This method deals with the case when the node to be removed has only one child, either right or left
      */
     protected void enforceRBTreePropertiesAfterRemoveCase1(Node<T> nodeToBeRemoved) {
+        if (metrics != null) metrics.recordFixup(TreeMetrics.Fixup.REMOVE_ONE_CHILD, 0, 1);
         boolean hasRightChild = (nodeToBeRemoved.context[2] != null);
         if (hasRightChild) {
             this.replaceNode(nodeToBeRemoved, nodeToBeRemoved.context[2]);
@@ -607,10 +1236,13 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
      */
     protected Node<T> findNodeWithData(T data) {
         Node<T> current = this.root;
+        int stepsLeft = maxHeight();
         while (current != null) {
+            if (stepsLeft-- == 0) throw new ConcurrentModificationException("Tree is deeper than a red-black tree can be");
             int compare = data.compareTo(current.data);
             if (compare == 0) {
                 // we found our value
+                if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
                 return current;
             } else if (compare < 0) {
                 // keep looking in the left subtree
@@ -621,6 +1253,7 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
             }
         }
         // we're at a null node and did not find data, so it's not in the tree
+        if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
         return null; 
     }
 
@@ -695,9 +1328,12 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
         }
 
         Node<T> current = root;
+        int stepsLeft = maxHeight();
         while (current != null) {
+            if (stepsLeft-- == 0) throw new ConcurrentModificationException("Tree is deeper than a red-black tree can be");
             int comparison = data.compareTo(current.data);
             if (comparison == 0) {
+                if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
                 return current.data;
             } else if (comparison < 0) {
                 current = current.context[1];
@@ -706,9 +1342,345 @@ public class RedBlackTree<T extends Comparable<T>> implements RedBlackTreeInterf
             }
         }
 
+        if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
         throw new IllegalArgumentException("Word does not exist in dictionary.");
     }
 
+    /**
+     * Searches the tree for the value the probe is equal to. Unlike search, a
+     * missing value is not reported by an exception, so a lookup does not
+     * allocate anything.
+     * @param probe compares the key that is searched for with values of the tree
+     * @return the value equal to the key, or null when there is none
+     */
+    public T find(Probe<? super T> probe) {
+        if (probe == null) throw new NullPointerException("Probe is null.");
+        Node<T> current = root;
+        int stepsLeft = maxHeight();
+        while (current != null) {
+            if (stepsLeft-- == 0) throw new ConcurrentModificationException("Tree is deeper than a red-black tree can be");
+            int comparison = probe.compareTo(current.data);
+            if (comparison == 0) {
+                if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
+                return current.data;
+            }
+            current = comparison < 0 ? current.context[1] : current.context[2];
+        }
+        if (metrics != null) metrics.recordSearch(maxHeight() - stepsLeft);
+        return null;
+    }
+
+    /**
+     * Returns the values of this tree in order, starting with the first value
+     * that is not smaller than start and continuing for as long as the values
+     * are accepted by inRange, up to at most limit values. Finding the first
+     * value takes O(log n) time, every following value O(1) amortized.
+     * @param start the smallest value that may be returned
+     * @param inRange returns false for the first value past the end of the range
+     * @param limit maximum number of values to return
+     * @return list of the values in the range, in order
+     */
+    public ArrayList<T> rangeFrom(T start, Predicate<? super T> inRange, int limit) {
+        if (start == null) throw new NullPointerException("Range start cannot be null.");
+        ArrayList<T> values = new ArrayList<>();
+        Node<T> current = findCeilingNode(start);
+        while (current != null && values.size() < limit && inRange.test(current.data)) {
+            values.add(current.data);
+            current = findSuccessor(current);
+        }
+        return values;
+    }
+
+    /**
+     * Helper method that returns the node with the smallest value that is
+     * greater than or equal to data, or null if all values are smaller.
+     */
+    protected Node<T> findCeilingNode(T data) {
+        Node<T> current = this.root;
+        Node<T> ceiling = null;
+        while (current != null) {
+            int compare = data.compareTo(current.data);
+            if (compare == 0) {
+                return current;
+            } else if (compare < 0) {
+                // current is a candidate, a smaller one may be in the left subtree
+                ceiling = current;
+                current = current.context[1];
+            } else {
+                current = current.context[2];
+            }
+        }
+        return ceiling;
+    }
+
+    /**
+     * Helper method that returns the node that follows node in an in-order
+     * traversal, or null when node holds the largest value.
+     */
+    protected Node<T> findSuccessor(Node<T> node) {
+        if (node.context[2] != null) {
+            Node<T> current = node.context[2];
+            while (current.context[1] != null) {
+                current = current.context[1];
+            }
+            return current;
+        }
+        // go up until we leave a left subtree
+        Node<T> current = node;
+        while (current.isRightChild()) {
+            current = current.context[0];
+        }
+        return current.context[0];
+    }
+
+    /**
+     * Returns the number of values in this tree that are smaller than data,
+     * which is the index data has, or would have, in an in-order traversal.
+     * @param data the value to find the rank of
+     * @return the number of values smaller than data
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public int rank(T data) {
+        if (data == null) throw new NullPointerException("This RedBlackTree cannot store null references.");
+        int rank = 0;
+        Node<T> current = this.root;
+        while (current != null) {
+            int compare = data.compareTo(current.data);
+            if (compare == 0) {
+                return rank + sizeOf(current.context[1]);
+            } else if (compare < 0) {
+                current = current.context[1];
+            } else {
+                // everything in the left subtree and current itself are smaller
+                rank += sizeOf(current.context[1]) + 1;
+                current = current.context[2];
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the value at the given index of an in-order traversal of this
+     * tree, in O(log n) time.
+     * @param index the number of values that are smaller than the value returned
+     * @return the value at that index
+     * @throws IndexOutOfBoundsException when index is negative or not smaller than size()
+     */
+    public T select(int index) {
+        return findNodeAtIndex(index).data;
+    }
+
+    /**
+     * Returns at most limit values of this tree in order, starting with the
+     * value at index offset, in O(log n + limit) time.
+     * @param offset index of the first value to return
+     * @param limit maximum number of values to return
+     * @return list of the values on the page, empty when offset is past the end
+     */
+    public ArrayList<T> page(int offset, int limit) {
+        if (offset < 0) throw new IndexOutOfBoundsException("Negative offset: " + offset);
+        ArrayList<T> values = new ArrayList<>();
+        if (offset >= size || limit <= 0) {
+            return values;
+        }
+        Node<T> current = findNodeAtIndex(offset);
+        while (current != null && values.size() < limit) {
+            values.add(current.data);
+            current = findSuccessor(current);
+        }
+        return values;
+    }
+
+    /**
+     * Helper method that returns the node at the given index of an in-order
+     * traversal using the subtree sizes.
+     */
+    protected Node<T> findNodeAtIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+        Node<T> current = this.root;
+        while (true) {
+            int leftSize = sizeOf(current.context[1]);
+            if (index < leftSize) {
+                current = current.context[1];
+            } else if (index == leftSize) {
+                return current;
+            } else {
+                index -= leftSize + 1;
+                current = current.context[2];
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the values of this tree in order. The iterator
+     * follows parent references instead of keeping a stack, so it uses a
+     * constant amount of memory. It is fail-fast: once the tree is modified
+     * by anything other than the iterator, its methods throw a
+     * ConcurrentModificationException.
+     * @return in-order iterator over the values of this tree
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new InOrderIterator();
+    }
+
+    /**
+     * Returns a spliterator over the values of this tree in order. Splitting
+     * divides the remaining values at their median using the subtree sizes, so
+     * on a balanced tree the halves line up with subtree boundaries and a
+     * parallel stream gets even shares of the work.
+     * @return sized, sorted spliterator over the values of this tree
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new InOrderSpliterator(0, -1, null, modCount);
+    }
+
+    /**
+     * @return a sequential stream of the values of this tree in order
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a possibly parallel stream of the values of this tree in order
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Iterator that walks from each node to its in-order successor.
+     */
+    private class InOrderIterator implements Iterator<T> {
+        private Node<T> next = root == null ? null : leftmost(root);
+        private Node<T> lastReturned = null;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next == null) throw new NoSuchElementException();
+            lastReturned = next;
+            next = findSuccessor(next);
+            return lastReturned.data;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            // removing a node with two children moves its successor's value into it,
+            // so the value that comes next is found again by search afterwards
+            T following = next == null ? null : next.data;
+            RedBlackTree.this.remove(lastReturned.data);
+            next = following == null ? null : findNodeWithData(following);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Spliterator over the values at indexes index (inclusive) to fence
+     * (exclusive) of an in-order traversal. A fence of -1 means the end of
+     * the tree, which is resolved on first use.
+     */
+    private class InOrderSpliterator implements Spliterator<T> {
+        private int index;
+        private int fence;
+        private Node<T> next; // node at index, found when it is first needed
+        private int expectedModCount;
+
+        private InOrderSpliterator(int index, int fence, Node<T> next, int expectedModCount) {
+            this.index = index;
+            this.fence = fence;
+            this.next = next;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            if (fence < 0) {
+                fence = size;
+                expectedModCount = modCount;
+            }
+            return fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int lo = index, hi = getFence(), mid = (lo + hi) >>> 1;
+            if (hi - lo < 2) return null;
+            // the first half is handed off, this spliterator continues at the median
+            InOrderSpliterator prefix = new InOrderSpliterator(lo, mid, next, expectedModCount);
+            index = mid;
+            next = null;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            int hi = getFence();
+            if (index >= hi) return false;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next == null) next = findNodeAtIndex(index);
+            T data = next.data;
+            next = ++index < hi ? findSuccessor(next) : null;
+            action.accept(data);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            int hi = getFence();
+            if (index >= hi) return;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            Node<T> current = next == null ? findNodeAtIndex(index) : next;
+            for (; index < hi; index++) {
+                action.accept(current.data);
+                current = findSuccessor(current);
+            }
+            next = null;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED
+                    | Spliterator.SUBSIZED | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return null; // values are sorted by their natural order
+        }
+    }
+
+    /**
+     * Helper method that returns the node with the smallest value in the
+     * subtree rooted at node.
+     */
+    protected Node<T> leftmost(Node<T> node) {
+        while (node.context[1] != null) {
+            node = node.context[1];
+        }
+        return node;
+    }
+
     public ArrayList<T> getSubtree(T data) {
         Node<T> startNode = findNodeWithData(data);
         if (startNode == null) {
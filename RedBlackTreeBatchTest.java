@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Applies random batches of insertAll and removeAll to a RedBlackTree and the
+ * same values one by one to a TreeSet, and checks after every batch that both
+ * hold the same values, that each value was reported as changed exactly when
+ * the TreeSet changed, and that the tree is still a valid red-black tree.
+ */
+public class RedBlackTreeBatchTest {
+
+    // returns the black height of the subtree, throws when it breaks an invariant
+    static int check(RedBlackTree.Node<Integer> node, RedBlackTree.Node<Integer> parent, Integer low, Integer high) {
+        if (node == null) {
+            return 1;
+        }
+        if (node.context[0] != parent) {
+            throw new AssertionError("wrong parent of " + node.data);
+        }
+        if ((low != null && node.data <= low) || (high != null && node.data >= high)) {
+            throw new AssertionError(node.data + " is out of order");
+        }
+        if (node.blackHeight == 0 && parent != null && parent.blackHeight == 0) {
+            throw new AssertionError("red node " + node.data + " has a red parent");
+        }
+        int left = check(node.context[1], node, low, node.data);
+        int right = check(node.context[2], node, node.data, high);
+        if (left != right) {
+            throw new AssertionError("black heights of " + node.data + " differ: " + left + " and " + right);
+        }
+        int size = 1 + (node.context[1] == null ? 0 : node.context[1].subtreeSize)
+                + (node.context[2] == null ? 0 : node.context[2].subtreeSize);
+        if (size != node.subtreeSize) {
+            throw new AssertionError("wrong subtree size of " + node.data);
+        }
+        return left + node.blackHeight;
+    }
+
+    static void validate(RedBlackTree<Integer> tree, TreeSet<Integer> expected) {
+        if (tree.root != null && tree.root.blackHeight != 1) {
+            throw new AssertionError("root is red");
+        }
+        check(tree.root, null, null, null);
+        if (tree.size() != expected.size()) {
+            throw new AssertionError("size " + tree.size() + " instead of " + expected.size());
+        }
+        List<Integer> values = new ArrayList<>();
+        for (Integer value : tree) {
+            values.add(value);
+        }
+        if (!values.equals(new ArrayList<>(expected))) {
+            throw new AssertionError("values differ from the TreeSet");
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 20);
+        int batches = 0;
+        for (int round = 0; round < 250; round++) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            TreeSet<Integer> expected = new TreeSet<>();
+            // small ranges give many repeated values, large ones big batches that run in parallel
+            boolean small = round < 200;
+            int range = 1 + random.nextInt(small ? 200 : 50000);
+            for (int step = 0; step < 8; step++) {
+                int count = random.nextInt(small ? 60 : 5000);
+                List<Integer> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(random.nextInt(range));
+                }
+                boolean insert = random.nextInt(3) != 0;
+                boolean[] changed = insert ? tree.insertAll(batch) : tree.removeAll(batch);
+                for (int i = 0; i < count; i++) {
+                    boolean expectedChange = insert ? expected.add(batch.get(i)) : expected.remove(batch.get(i));
+                    if (changed[i] != expectedChange) {
+                        throw new AssertionError((insert ? "insertAll" : "removeAll") + " reported " + changed[i]
+                                + " for " + batch.get(i));
+                    }
+                }
+                validate(tree, expected);
+                // single insertions and removals keep working on the joined tree
+                int value = random.nextInt(range);
+                if (expected.add(value)) {
+                    tree.insert(value);
+                } else {
+                    expected.remove(value);
+                    tree.remove(value);
+                }
+                validate(tree, expected);
+                batches++;
+            }
+        }
+        try {
+            new RedBlackTree<Integer>().insertAll(Arrays.asList(1, null));
+            throw new AssertionError("insertAll accepted null");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        System.out.println(batches + " random batches match the TreeSet");
+    }
+}
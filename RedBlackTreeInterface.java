@@ -10,6 +10,15 @@ public interface RedBlackTreeInterface<T extends Comparable<T>> extends SortedCo
     
     // searches through the tree for matching data to return the value of
     public T search(T data) throws NullPointerException, IllegalArgumentException;
+
+    // compares a search key of another type, like the characters of a word, with the values of the tree
+    public interface Probe<T> {
+        // returns a negative number, zero or a positive number when the key is smaller than, equal to or larger than value
+        public int compareTo(T value);
+    }
+
+    // searches through the tree for the value the probe is equal to, returns null when there is none
+    public T find(Probe<? super T> probe);
     
     // returns the subtree where the specified T would be the root (used for the autocomplete feature) 
     public ArrayList<T> getSubtree(T data);
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Removes the values of random trees one at a time, in random, ascending and
+ * descending order and always from the root, and checks after every removal
+ * that the tree is still a valid red-black tree with the expected values.
+ * Uses the invariant checks of RedBlackTreeBatchTest.
+ */
+public class RedBlackTreeRemoveTest {
+
+    static RedBlackTree<Integer> fill(List<Integer> values, TreeSet<Integer> expected) {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (Integer value : values) {
+            if (expected.add(value)) {
+                tree.insert(value);
+            }
+        }
+        RedBlackTreeBatchTest.validate(tree, expected);
+        return tree;
+    }
+
+    static void removeAll(RedBlackTree<Integer> tree, TreeSet<Integer> expected, List<Integer> order) {
+        for (Integer value : order) {
+            if (expected.remove(value)) {
+                if (!tree.remove(value)) {
+                    throw new AssertionError("remove(" + value + ") returned false");
+                }
+            } else {
+                try {
+                    tree.remove(value);
+                    throw new AssertionError("remove(" + value + ") accepted a value that is not in the tree");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            RedBlackTreeBatchTest.validate(tree, expected);
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 7);
+        int removals = 0;
+        for (int round = 0; round < 300; round++) {
+            int range = 1 + random.nextInt(round < 150 ? 50 : 2000);
+            List<Integer> values = new ArrayList<>();
+            for (int i = random.nextInt(400); i > 0; i--) {
+                values.add(random.nextInt(range));
+            }
+            TreeSet<Integer> expected = new TreeSet<>();
+            RedBlackTree<Integer> tree = fill(values, expected);
+
+            List<Integer> order = new ArrayList<>(expected);
+            switch (round % 3) {
+                case 0:
+                    Collections.shuffle(order, random);
+                    break;
+                case 1:
+                    break; // ascending, always the smallest value
+                default:
+                    Collections.reverse(order); // descending, always the largest value
+                    break;
+            }
+            // a value that is not in the tree is rejected and leaves it unchanged
+            order.add(random.nextInt(order.size() + 1), range + 1);
+            removeAll(tree, expected, order);
+            removals += order.size();
+            if (!tree.isEmpty()) {
+                throw new AssertionError("tree is not empty after removing every value");
+            }
+
+            // removing the root every time exercises the removal of nodes with two children
+            tree = fill(values, expected);
+            while (tree.root != null) {
+                removeAll(tree, expected, Collections.singletonList(tree.root.data));
+                removals++;
+            }
+        }
+        System.out.println(removals + " removals kept the red-black tree valid");
+    }
+}
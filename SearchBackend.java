@@ -1,57 +1,1138 @@
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
+// All methods may be called from several threads at once: lookups run as
+// optimistic reads of the tree and changes are serialized by the dictionary
 public class SearchBackend {
 
-	protected Word currentWord;
-	protected RedBlackTree<Word> tree;
+	protected OrderedTreeInterface<Word> tree; // a RedBlackTree or an AdaptiveRadixTree
+	protected ConcurrentDictionary<Word> dictionary; // guards every access to tree
 	protected WordReader wordReader;
-	List<Integer> alphabetIndex = new ArrayList<Integer>();
-	int currentExtraCharacters = 0;
 	String alphabet = "abcdefghijklmnopqrstuvwxyz";
+	volatile String loadStatistics = "No file loaded";
+	// optional cache of found words by their lower case spelling, null when disabled
+	volatile LookupCache<String, Word> cache = null;
+	// optional filter of the lower case spellings of all words, null when disabled.
+	// It is only replaced or rebuilt while holding a lock of the dictionary
+	volatile BloomFilter bloomFilter = null;
+	double bloomFalsePositiveRate = 0.01;
+	double bloomRebuildThreshold = 0.1; // fraction of removed words after which the filter is rebuilt
+	// optional tree of all words by edit distance for spelling suggestions, null
+	// when disabled. It is only changed while holding the write lock
+	volatile BKTree<Word> suggestionTree = null;
+	int suggestionDistance = 2; // maximum number of edits between a misspelled and a suggested word
+	long suggestionBudgetNanos = 1_000_000; // time after which the best suggestions found so far are returned
+	int suggestionLimit = 10; // maximum number of words suggested for a misspelled word
+	// optional index of all words by the strings made by deleting some of their
+	// characters, null when disabled. It is only changed while holding the write lock
+	volatile SymSpellIndex<Word> deletionIndex = null;
+	int pageSize = 20; // number of words listed per page
+	int parallelBatchSize = 4096; // batches of at least this many words are looked up by several threads
+	// optional log of the words added and removed since the last snapshot, null when
+	// disabled. Records are only appended while holding the write lock
+	volatile WriteAheadLog log = null;
+	Path snapshotFile; // the snapshot the log continues
+	Path userWordsFile; // the keys of userWords as of the snapshot, one per line
+	// keys of the words the user added or removed, as opposed to words loaded from
+	// a file. Reloading a file leaves them as the user made them. Only changed
+	// while holding the write lock
+	private final Set<String> userWords = new HashSet<>();
+	long compactionThreshold = 64L << 20; // log size in bytes after which it is compacted into a new snapshot
+	private final AtomicBoolean compacting = new AtomicBoolean(false);
+	// one reusable search key per thread, so looking up a word does not allocate
+	private final ThreadLocal<WordProbe> probes = ThreadLocal.withInitial(WordProbe::new);
+	// latencies of the operations and counters of the tree, only counted while enabled
+	private final DictionaryMetrics metrics;
 
-	SearchBackend(RedBlackTree<Word> tree2, WordReader newWordReader) {
+	SearchBackend(OrderedTreeInterface<Word> tree2, WordReader newWordReader) {
 		tree = tree2;
+		dictionary = new ConcurrentDictionary<>(tree);
 		wordReader = newWordReader;
-		alphabetIndex.add(0);
+		metrics = new DictionaryMetrics(dictionary::size, () -> dictionary.read(this::blackHeight),
+				treeMetrics -> dictionary.write(() -> {
+					if (tree instanceof RedBlackTree) {
+						((RedBlackTree<Word>) tree).setMetrics(treeMetrics);
+					}
+					return null;
+				}));
+	}
+
+	// Starts or stops timing the operations and counting the comparisons and
+	// rebalancing of a red-black tree. While stopped they cost a check of a flag
+	public void enableMetrics(boolean enabled) {
+		metrics.setEnabled(enabled);
+	}
+
+	public DictionaryMetrics getMetrics() {
+		return metrics;
+	}
+
+	// Registers the metrics with the platform MBean server under
+	// dictionary:type=SearchBackend,name=<name>, so they can be watched with jconsole
+	public ObjectName registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName("dictionary:type=SearchBackend,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+		return objectName;
+	}
+
+	// Helper method that returns the black height of a red-black tree, and 0 for
+	// other trees. Must be called with a lock held
+	private int blackHeight() {
+		return tree instanceof RedBlackTree ? ((RedBlackTree<Word>) tree).blackHeight() : 0;
+	}
+
+	// Helper method that returns the height of a red-black tree by visiting every
+	// node, and 0 for other trees. Only for reports, must be called with a lock held
+	private int treeHeight() {
+		return tree instanceof RedBlackTree ? ((RedBlackTree<Word>) tree).height() : 0;
+	}
+
+	// Puts a cache holding up to maximumSize of the most used words in front of
+	// the tree, or removes the cache when maximumSize is 0
+	public void enableCache(int maximumSize) {
+		cache = maximumSize == 0 ? null : new LookupCache<>(maximumSize);
+	}
+
+	// Normalizes a word to the key it is cached under, words are compared ignoring case
+	private static String cacheKey(String word) {
+		return Word.normalize(word);
+	}
+
+	// Removes a word from the cache after it changed in the tree
+	private void invalidateCache(String word) {
+		LookupCache<String, Word> current = cache;
+		if (current != null) {
+			current.invalidate(cacheKey(word));
+		}
+	}
+
+	// Removes all words from the cache after the tree was loaded
+	private void invalidateCache() {
+		LookupCache<String, Word> current = cache;
+		if (current != null) {
+			current.invalidateAll();
+		}
+	}
+
+	// Puts a Bloom filter in front of the tree, so that most lookups of words
+	// that are not in the dictionary are answered without searching the tree.
+	// A falsePositiveRate of 0 removes the filter
+	public void enableBloomFilter(double falsePositiveRate) {
+		enableBloomFilter(falsePositiveRate, bloomRebuildThreshold);
+	}
+
+	// Like enableBloomFilter(double), and rebuilds the filter once the number of
+	// removed words exceeds rebuildThreshold times the number of words added to it
+	public void enableBloomFilter(double falsePositiveRate, double rebuildThreshold) {
+		if (falsePositiveRate == 0) {
+			dictionary.write(() -> {
+				bloomFilter = null;
+				return null;
+			});
+			return;
+		}
+		dictionary.write(() -> {
+			rebuildBloomFilter(falsePositiveRate, rebuildThreshold);
+			bloomFalsePositiveRate = falsePositiveRate;
+			bloomRebuildThreshold = rebuildThreshold;
+			return null;
+		});
+	}
+
+	// Helper method that fills a new filter with all the words of the tree, must
+	// be called with the write lock held so no word is added while it runs. The
+	// filter has room for twice the current words so it can grow before it is
+	// rebuilt again
+	private void rebuildBloomFilter(double falsePositiveRate, double rebuildThreshold) {
+		BloomFilter filter = new BloomFilter(Math.max(1024, 2 * tree.size()), falsePositiveRate, rebuildThreshold);
+		for (Word word : tree) {
+			filter.add(word.getKey());
+		}
+		bloomFilter = filter;
+	}
+
+	// Suggests the words closest to a misspelled word by edit distance instead of
+	// the words sharing its first characters. A search stops after budgetNanos and
+	// returns the closest words found until then. A maxDistance of 0 goes back to
+	// suggestions by prefix
+	public void enableSpellingSuggestions(int maxDistance, long budgetNanos) {
+		if (maxDistance < 0 || budgetNanos <= 0) {
+			throw new IllegalArgumentException(
+					"Invalid distance " + maxDistance + " or time budget " + budgetNanos + " for suggestions");
+		}
+		dictionary.write(() -> {
+			suggestionDistance = maxDistance;
+			suggestionBudgetNanos = budgetNanos;
+			if (maxDistance == 0) {
+				suggestionTree = null;
+			} else {
+				rebuildSuggestionTree();
+			}
+			return null;
+		});
+	}
+
+	// Helper method that fills a new suggestion tree with all the words of the
+	// tree, must be called with the write lock held
+	private void rebuildSuggestionTree() {
+		BKTree<Word> suggestions = new BKTree<>();
+		for (Word word : tree) {
+			suggestions.add(word.getKey(), word);
+		}
+		suggestionTree = suggestions;
+	}
+
+	// Suggests the words closest to a misspelled word from an index of deletions
+	// instead of searching, which takes a few hash lookups per suggestion at the
+	// cost of storing every word under all strings made by deleting up to
+	// maxDistance of its first prefixLength characters. A maxDistance of 0 removes
+	// the index
+	public void enableDeletionIndex(int maxDistance, int prefixLength) {
+		if (maxDistance < 0 || (maxDistance > 0 && prefixLength <= maxDistance)) {
+			throw new IllegalArgumentException(
+					"Invalid distance " + maxDistance + " or prefix length " + prefixLength + " for deletion index");
+		}
+		dictionary.write(() -> {
+			if (maxDistance == 0) {
+				deletionIndex = null;
+			} else {
+				rebuildDeletionIndex(maxDistance, prefixLength);
+			}
+			return null;
+		});
+	}
+
+	// Helper method that fills a new deletion index with all the words of the
+	// tree, must be called with the write lock held
+	private void rebuildDeletionIndex(int maxDistance, int prefixLength) {
+		SymSpellIndex<Word> index = new SymSpellIndex<>(maxDistance, prefixLength);
+		for (Word word : tree) {
+			index.add(word.getKey(), word);
+		}
+		deletionIndex = index;
+	}
+
+	// Helper method that rebuilds the enabled indexes of the words after loading
+	// words into the tree, must be called with the write lock held
+	private void updateIndexes() {
+		if (bloomFilter != null) {
+			rebuildBloomFilter(bloomFalsePositiveRate, bloomRebuildThreshold);
+		}
+		if (suggestionTree != null) {
+			rebuildSuggestionTree();
+		}
+		SymSpellIndex<Word> index = deletionIndex;
+		if (index != null) {
+			rebuildDeletionIndex(index.getMaxDistance(), index.getPrefixLength());
+		}
 	}
 
 	public void loadData(String filename) throws FileNotFoundException {
-		List<Word> listOfWords = wordReader.readWordsFromFile(filename);
-		for (Word word : listOfWords) {
-			tree.insert(word);
+		loadData(filename, 1);
+	}
+
+	// Loads the file using the given number of threads. With more than one thread
+	// the file is parsed and sorted in chunks that are merged into the tree
+	public void loadData(String filename, int threads) throws FileNotFoundException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+		}
+		long start = metrics.start();
+		try {
+			load(filename, threads);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load " + filename, e);
+		} finally {
+			metrics.record(DictionaryMetrics.Operation.LOAD, start);
+		}
+		try {
+			saveLoadedWords();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not save the loaded words in a snapshot", e);
 		}
 	}
 
+	// Helper method for loadData
+	private void load(String filename, int threads) throws IOException {
+		if (threads == 1) {
+			// the words are collected in one pass over the file and then linked into
+			// a balanced tree in linear time when the file is already sorted. Only
+			// linking them blocks readers
+			List<Word> listOfWords = new ArrayList<>();
+			DictionaryEvents.LoadPhase parse = new DictionaryEvents.LoadPhase();
+			parse.begin();
+			synchronized (wordReader) {
+				wordReader.streamWordsFromFile(filename, listOfWords::add);
+				loadStatistics = wordReader.getLoadStatisticsString();
+				parse.commit("parse", filename, listOfWords.size(), wordReader.bytesRead, 1);
+			}
+			try {
+				dictionary.write(() -> {
+					build(listOfWords, filename, false);
+					return null;
+				});
+			} finally {
+				invalidateCache();
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				ParallelDictionaryLoader loader = new ParallelDictionaryLoader(pool);
+				// the chunks are parsed and sorted before taking the lock, only
+				// merging them into the tree blocks readers
+				List<List<Word>> runs = loader.readSortedRuns(filename);
+				try {
+					dictionary.write(() -> {
+						for (List<Word> run : runs) {
+							removeUserWords(run);
+						}
+						loader.build(runs, filename, tree);
+						DictionaryEvents.LoadPhase index = new DictionaryEvents.LoadPhase();
+						index.begin();
+						updateIndexes();
+						index.commit("index", filename, tree.size(), 0, 1);
+						return null;
+					});
+				} finally {
+					invalidateCache();
+				}
+				loadStatistics = loader.getLoadStatisticsString();
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	// Helper method that adds the words read from a file to the tree and the
+	// indexes, recording both as load phases. Words already in a tree that is not
+	// empty keep their entry, so loading a second file only adds to the
+	// dictionary. Words that are sorted in tree order, like those of a snapshot,
+	// are linked into an empty red-black tree without checking whether they need
+	// sorting. Must be called with the write lock held
+	private void build(List<Word> words, String filename, boolean sorted) {
+		DictionaryEvents.LoadPhase build = new DictionaryEvents.LoadPhase();
+		build.begin();
+		removeUserWords(words);
+		if (sorted && tree.isEmpty() && tree instanceof RedBlackTree) {
+			((RedBlackTree<Word>) tree).buildFromSorted(words.iterator(), words.size());
+		} else if (tree.isEmpty()) {
+			tree.bulkLoad(words);
+		} else {
+			tree.insertAll(words);
+		}
+		build.commit("build", filename, words.size(), 0, 1);
+		DictionaryEvents.LoadPhase index = new DictionaryEvents.LoadPhase();
+		index.begin();
+		updateIndexes();
+		index.commit("index", filename, tree.size(), 0, 1);
+	}
+
+	// Helper method that leaves out the words of the user from words loaded from a
+	// file: the words the user added are in the tree already, and the words the
+	// user removed stay removed. Must be called with the write lock held
+	private void removeUserWords(List<Word> words) {
+		if (!userWords.isEmpty()) {
+			words.removeIf(word -> userWords.contains(word.getKey()));
+		}
+	}
+
+	// Returns the throughput of the last file load
+	public String getLoadStatisticsString() {
+		return loadStatistics;
+	}
+
+	// Saves all the words in the tree to a binary snapshot file
+	public void saveSnapshot(String filename) throws IOException {
+		dictionary.read(() -> {
+			DictionarySnapshot.write(tree, filename);
+			return null;
+		});
+	}
+
+	// Returns a read-only copy of the words in the tree that needs much less memory,
+	// for serving lookups once the dictionary no longer changes
+	public FrozenDictionary freeze() {
+		return dictionary.read(() -> FrozenDictionary.of(tree));
+	}
+
+	// Loads the words of a binary snapshot file, the snapshot is already in tree
+	// order so no parsing or rebalancing is needed. A snapshot whose words are not
+	// in tree order is rejected with an IllegalArgumentException
+	public void loadSnapshot(String filename) throws IOException {
+		long start = metrics.start();
+		try {
+			DictionaryEvents.LoadPhase read = new DictionaryEvents.LoadPhase();
+			read.begin();
+			List<Word> words = DictionarySnapshot.read(filename);
+			read.commit("read snapshot", filename, words.size(), 0, 1);
+			dictionary.write(() -> {
+				build(words, filename, true);
+				return null;
+			});
+		} finally {
+			invalidateCache();
+			metrics.record(DictionaryMetrics.Operation.LOAD, start);
+		}
+		saveLoadedWords();
+	}
+
+	// Helper method that saves the words of a load in a new snapshot, since they
+	// are not in the write-ahead log. Only called once the whole file was loaded,
+	// a load that failed or was cut short throws before and leaves the snapshot
+	// and the log as they were. compact only empties the log once the new
+	// snapshot has replaced the old one on disk
+	private void saveLoadedWords() throws IOException {
+		if (log != null) {
+			compact();
+		}
+	}
+
+	// Replaces the dictionary with a new version of a file loaded before, unlike
+	// loadData, which only adds words: words that are not in the file are removed.
+	// Words the user added or removed are kept as they are. The file is read and
+	// sorted without holding a lock and compared with the words of the tree in one
+	// walk of both in order. Only the words that were added, removed or changed are
+	// then changed in the tree, all in one write, so readers see either the old or
+	// the new dictionary. Of words the file holds twice the first is kept. Returns
+	// how many words changed
+	public String reloadData(String filename) throws FileNotFoundException {
+		long start = metrics.start();
+		try {
+			List<Word> words = new ArrayList<>();
+			DictionaryEvents.LoadPhase parse = new DictionaryEvents.LoadPhase();
+			parse.begin();
+			synchronized (wordReader) {
+				wordReader.streamWordsFromFile(filename, words::add);
+				loadStatistics = wordReader.getLoadStatisticsString();
+				parse.commit("parse", filename, words.size(), wordReader.bytesRead, 1);
+			}
+			return reload(words, filename);
+		} finally {
+			metrics.record(DictionaryMetrics.Operation.LOAD, start);
+		}
+	}
+
+	// Brings the dictionary up to date with a snapshot like reloadData
+	public String reloadSnapshot(String filename) throws IOException {
+		long start = metrics.start();
+		try {
+			DictionaryEvents.LoadPhase read = new DictionaryEvents.LoadPhase();
+			read.begin();
+			List<Word> words = DictionarySnapshot.read(filename);
+			read.commit("read snapshot", filename, words.size(), 0, 1);
+			return reload(words, filename);
+		} finally {
+			metrics.record(DictionaryMetrics.Operation.LOAD, start);
+		}
+	}
+
+	// The words a reload removes from the tree and adds to it. A changed word is
+	// removed in its old version and added in its new one
+	private static class ReloadDiff {
+		final List<Word> removed = new ArrayList<>();
+		final List<Word> added = new ArrayList<>();
+		int changed = 0;
+		int kept = 0; // words the user added or removed that the file would change
+		int keptInFile = 0; // of those, the ones that are in the file
+	}
+
+	// Helper method for reloadData and reloadSnapshot
+	private String reload(List<Word> words, String filename) {
+		List<Word> sorted = sortedDistinct(words);
+		// the difference is found under the read lock, so lookups go on meanwhile
+		DictionaryEvents.LoadPhase compare = new DictionaryEvents.LoadPhase();
+		compare.begin();
+		long[] writeCount = new long[1];
+		ReloadDiff found = dictionary.read(() -> {
+			writeCount[0] = dictionary.getWriteCount();
+			return diff(sorted);
+		});
+		compare.commit("diff", filename, sorted.size(), 0, 1);
+		DictionaryEvents.LoadPhase apply = new DictionaryEvents.LoadPhase();
+		apply.begin();
+		long[] position = new long[1];
+		ReloadDiff applied = null;
+		try {
+			applied = dictionary.write(() -> {
+				// another writer changed the tree since, so the difference is found again
+				ReloadDiff current = dictionary.getWriteCount() == writeCount[0] ? found : diff(sorted);
+				position[0] = logRemovals(current.removed);
+				tree.removeAll(current.removed);
+				for (Word word : current.removed) {
+					removeFromIndexes(word);
+				}
+				long logged = logAdditions(current.added);
+				if (logged != 0) {
+					position[0] = logged;
+				}
+				tree.insertAll(current.added);
+				for (Word word : current.added) {
+					addToIndexes(word);
+				}
+				return current;
+			});
+			commit(position[0]);
+			// the file is the new base of the dictionary, so its words are saved in
+			// a new snapshot instead of staying in the log like changes of the user
+			saveLoadedWords();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log the reloaded words", e);
+		} finally {
+			ReloadDiff changes = applied != null ? applied : found;
+			for (Word word : changes.removed) {
+				invalidateCache(word.getWord());
+			}
+			for (Word word : changes.added) {
+				invalidateCache(word.getWord());
+			}
+		}
+		apply.commit("apply", filename, applied.removed.size() + applied.added.size(), 0, 1);
+		return String.format("Reloaded %s: %d words added, %d removed, %d changed, %d unchanged, %d kept as edited",
+				filename, applied.added.size() - applied.changed, applied.removed.size() - applied.changed,
+				applied.changed, sorted.size() - applied.added.size() - applied.keptInFile, applied.kept);
+	}
+
+	// Helper method that returns the words in the order of the tree, keeping only
+	// the first of words with the same key
+	private static List<Word> sortedDistinct(List<Word> words) {
+		boolean sorted = true;
+		for (int i = 1; i < words.size() && sorted; i++) {
+			sorted = words.get(i - 1).compareTo(words.get(i)) < 0;
+		}
+		if (sorted) {
+			return words;
+		}
+		List<Word> copy = new ArrayList<>(words);
+		copy.sort(null); // stable, so the first of equal words stays first
+		List<Word> distinct = new ArrayList<>(copy.size());
+		for (Word word : copy) {
+			if (distinct.isEmpty() || distinct.get(distinct.size() - 1).compareTo(word) != 0) {
+				distinct.add(word);
+			}
+		}
+		return distinct;
+	}
+
+	// Helper method that walks the tree and the sorted words together in order and
+	// returns the words that differ, leaving out the words of the user. Must be
+	// called with a lock held
+	private ReloadDiff diff(List<Word> sorted) {
+		ReloadDiff diff = new ReloadDiff();
+		Iterator<Word> old = tree.iterator();
+		Word current = old.hasNext() ? old.next() : null;
+		for (Word word : sorted) {
+			while (current != null && current.compareTo(word) < 0) {
+				removeUnlessUserWord(diff, current);
+				current = old.hasNext() ? old.next() : null;
+			}
+			if (current != null && current.compareTo(word) == 0) {
+				if (!current.getWord().equals(word.getWord()) || !Objects.equals(current.getPart(), word.getPart())
+						|| !Objects.equals(current.getDefinition(), word.getDefinition())) {
+					if (userWords.contains(current.getKey())) {
+						diff.kept++;
+						diff.keptInFile++;
+					} else {
+						diff.removed.add(current);
+						diff.added.add(word);
+						diff.changed++;
+					}
+				}
+				current = old.hasNext() ? old.next() : null;
+			} else if (userWords.contains(word.getKey())) {
+				// removed by the user
+				diff.kept++;
+				diff.keptInFile++;
+			} else {
+				diff.added.add(word);
+			}
+		}
+		while (current != null) {
+			removeUnlessUserWord(diff, current);
+			current = old.hasNext() ? old.next() : null;
+		}
+		return diff;
+	}
+
+	// Helper method for diff
+	private void removeUnlessUserWord(ReloadDiff diff, Word word) {
+		if (userWords.contains(word.getKey())) {
+			diff.kept++;
+		} else {
+			diff.removed.add(word);
+		}
+	}
+
+	// Makes added and removed words survive a restart: restores the dictionary
+	// from the snapshot and the write-ahead log in the directory, and from then on
+	// logs every change before it is made. A change is on disk when the method
+	// making it returns, changes made at the same time share one sync of the log.
+	// Once the log is larger than compactionThreshold it is replaced by a new
+	// snapshot. Must be called before any words are loaded. Returns the number of
+	// changes restored from the log
+	public int openWriteAheadLog(String directory) throws IOException {
+		if (log != null) {
+			throw new IllegalStateException("A write-ahead log is already open");
+		}
+		Path folder = Paths.get(directory);
+		Files.createDirectories(folder);
+		Path snapshot = folder.resolve("dictionary.snapshot");
+		Path userWordsList = folder.resolve("dictionary.user");
+		List<Word> words = Files.exists(snapshot) ? DictionarySnapshot.read(snapshot.toString()) : new ArrayList<>();
+		List<String> keys = Files.exists(userWordsList) ? Files.readAllLines(userWordsList, StandardCharsets.UTF_8)
+				: new ArrayList<>();
+		WriteAheadLog newLog = new WriteAheadLog(folder.resolve("dictionary.wal"));
+		try {
+			// every record holds the whole new state of its word, so only the last
+			// change of each word counts, null for a removed word
+			Map<String, Word> changes = new LinkedHashMap<>();
+			newLog.replay(word -> changes.put(word.getKey(), word), word -> changes.put(Word.normalize(word), null));
+			dictionary.write(() -> {
+				if (!tree.isEmpty()) {
+					throw new IllegalStateException("The write-ahead log must be opened before words are loaded");
+				}
+				tree.bulkLoad(words);
+				List<Word> changed = new ArrayList<>(changes.size());
+				List<Word> added = new ArrayList<>(changes.size());
+				for (Map.Entry<String, Word> change : changes.entrySet()) {
+					Word key = new Word();
+					key.setWord(change.getKey());
+					changed.add(key);
+					if (change.getValue() != null) {
+						added.add(change.getValue());
+					}
+				}
+				tree.removeAll(changed);
+				tree.insertAll(added);
+				updateIndexes();
+				// every change in the log was made by the user or by a reload that
+				// was cut short before its snapshot was written
+				userWords.clear();
+				userWords.addAll(keys);
+				userWords.addAll(changes.keySet());
+				snapshotFile = snapshot;
+				userWordsFile = userWordsList;
+				log = newLog;
+				return null;
+			});
+			return changes.size();
+		} catch (IOException | RuntimeException e) {
+			newLog.close();
+			throw e;
+		} finally {
+			invalidateCache();
+		}
+	}
+
+	// Stops logging changes and closes the log, changes made so far stay on disk
+	public void closeWriteAheadLog() throws IOException {
+		WriteAheadLog current = dictionary.write(() -> {
+			WriteAheadLog previous = log;
+			log = null;
+			return previous;
+		});
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	// Saves the dictionary to a new snapshot next to the write-ahead log, together
+	// with the list of the words of the user, and empties the log. Writers wait
+	// while the snapshot is written, readers do not
+	public void compact() throws IOException {
+		if (log == null) {
+			throw new IllegalStateException("No write-ahead log is open");
+		}
+		if (!compacting.compareAndSet(false, true)) {
+			return; // another thread is compacting the log already
+		}
+		try {
+			dictionary.read(() -> {
+				WriteAheadLog current = log;
+				if (current == null) {
+					return null;
+				}
+				// the new snapshot replaces the old one only once it is complete and on
+				// disk, and the log is only emptied once the replacement is on disk too
+				Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+				DictionarySnapshot.write(tree, temporary.toString());
+				replaceFile(temporary, snapshotFile);
+				temporary = userWordsFile.resolveSibling(userWordsFile.getFileName() + ".tmp");
+				Files.write(temporary, userWords, StandardCharsets.UTF_8);
+				replaceFile(temporary, userWordsFile);
+				try (FileChannel folder = FileChannel.open(snapshotFile.toAbsolutePath().getParent(),
+						StandardOpenOption.READ)) {
+					folder.force(true);
+				} catch (IOException e) {
+					// directories cannot be opened on every platform, the rename is then
+					// only as durable as the file system makes it
+				}
+				current.reset();
+				return null;
+			});
+		} finally {
+			compacting.set(false);
+		}
+	}
+
+	// Helper method that forces a new file to disk and renames it to the file it
+	// replaces in one step
+	private static void replaceFile(Path temporary, Path target) throws IOException {
+		try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			file.force(true);
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Helper method that waits until the log records up to position are on disk,
+	// and compacts the log once it has grown too large. Must be called without
+	// holding a lock, so other writers can add their records to the same sync
+	private void commit(long position) {
+		WriteAheadLog current = log;
+		if (current == null || position == 0) {
+			return;
+		}
+		try {
+			current.sync(position);
+			if (current.size() >= compactionThreshold) {
+				compact();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write the write-ahead log", e);
+		}
+	}
+
+	// Helper method that appends a record of each word in turn that is not in the
+	// tree and was not given before, and returns the position to sync to, or 0
+	// without a log. Must be called with the write lock held, before the words are
+	// added
+	private long logAdditions(Collection<Word> words) throws IOException {
+		WriteAheadLog current = log;
+		long position = 0;
+		if (current != null) {
+			Set<String> seen = new HashSet<>();
+			for (Word word : words) {
+				if (seen.add(word.getKey()) && !tree.contains(word)) {
+					position = current.appendAdd(word);
+				}
+			}
+		}
+		return position;
+	}
+
+	// Helper method like logAdditions for the words that are in the tree and are
+	// about to be removed
+	private long logRemovals(Collection<Word> words) throws IOException {
+		WriteAheadLog current = log;
+		long position = 0;
+		if (current != null) {
+			Set<String> seen = new HashSet<>();
+			for (Word word : words) {
+				if (seen.add(word.getKey()) && tree.contains(word)) {
+					position = current.appendRemove(word.getWord());
+				}
+			}
+		}
+		return position;
+	}
+
 	public void loadWord(String word, String partOfSpeech, String definition) {
 		Word newWord = new Word();
 		newWord.setWord(word);
 		newWord.setPart(partOfSpeech);
 		newWord.setDefinition(definition);
-		tree.insert(newWord);
+		long start = metrics.start();
+		try {
+			long position = dictionary.write(() -> {
+				long logged = logAdditions(Collections.singletonList(newWord));
+				tree.insert(newWord);
+				addToIndexes(newWord);
+				userWords.add(newWord.getKey());
+				return logged;
+			});
+			commit(position);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log the addition of " + word, e);
+		} finally {
+			invalidateCache(word);
+			metrics.record(DictionaryMetrics.Operation.ADD, start);
+		}
 	}
 
-	public String findDefinition(String word, String filename) throws FileNotFoundException {
-		Word newWord = new Word();
-		newWord.setWord(word);
+	// Adds many words at once, like a list of additions applied every night, as one
+	// union of the tree with the sorted words. Words that are already in the
+	// dictionary keep their definition. Returns for each word whether it was added
+	public boolean[] loadWords(Collection<Word> words) {
+		long start = metrics.start();
+		long[] position = new long[1];
 		try {
-			currentWord = tree.search(newWord);
-		} catch (IllegalArgumentException e) {
-			currentWord = null;
+			boolean[] result = dictionary.write(() -> {
+				position[0] = logAdditions(words);
+				boolean[] added = tree.insertAll(words);
+				int i = 0;
+				for (Word word : words) {
+					if (added[i++]) {
+						addToIndexes(word);
+						userWords.add(word.getKey());
+					}
+				}
+				return added;
+			});
+			commit(position[0]);
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log the added words", e);
+		} finally {
+			for (Word word : words) {
+				invalidateCache(word.getWord());
+			}
+			metrics.record(DictionaryMetrics.Operation.ADD, start);
+		}
+	}
+
+	// Removes many words at once as one difference of the tree and the sorted
+	// words. Returns for each word whether it was in the dictionary and removed
+	public boolean[] removeWords(Collection<String> words) {
+		long start = metrics.start();
+		List<Word> batch = new ArrayList<>(words.size());
+		for (String word : words) {
+			Word key = new Word();
+			key.setWord(word);
+			batch.add(key);
+		}
+		long[] position = new long[1];
+		try {
+			boolean[] result = dictionary.write(() -> {
+				position[0] = logRemovals(batch);
+				boolean[] removed = tree.removeAll(batch);
+				for (int i = 0; i < removed.length; i++) {
+					if (removed[i]) {
+						removeFromIndexes(batch.get(i));
+						userWords.add(batch.get(i).getKey());
+					}
+				}
+				return removed;
+			});
+			commit(position[0]);
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log the removed words", e);
+		} finally {
+			for (String word : words) {
+				invalidateCache(word);
+			}
+			metrics.record(DictionaryMetrics.Operation.REMOVE, start);
+		}
+	}
+
+	// Helper method that adds a word that was inserted into the tree to the enabled
+	// indexes, must be called with the write lock held
+	private void addToIndexes(Word word) {
+		BloomFilter filter = bloomFilter;
+		if (filter != null) {
+			filter.add(word.getKey());
+			if (filter.needsRebuild()) {
+				rebuildBloomFilter(bloomFalsePositiveRate, bloomRebuildThreshold);
+			}
+		}
+		if (suggestionTree != null) {
+			suggestionTree.add(word.getKey(), word);
+		}
+		if (deletionIndex != null) {
+			deletionIndex.add(word.getKey(), word);
+		}
+	}
+
+	// Helper method that removes a word that was removed from the tree from the
+	// enabled indexes, must be called with the write lock held
+	private void removeFromIndexes(Word word) {
+		BloomFilter filter = bloomFilter;
+		if (filter != null) {
+			// the word stays in the filter until it is rebuilt
+			filter.recordRemoval();
+			if (filter.needsRebuild()) {
+				rebuildBloomFilter(bloomFalsePositiveRate, bloomRebuildThreshold);
+			}
+		}
+		BKTree<Word> suggestions = suggestionTree;
+		if (suggestions != null) {
+			// removed words still guide searches, the tree is rebuilt once they are a quarter of it
+			suggestions.remove(word.getKey());
+			if (suggestions.removedCount() > suggestions.size() / 4) {
+				rebuildSuggestionTree();
+			}
+		}
+		if (deletionIndex != null) {
+			deletionIndex.remove(word.getKey());
+		}
+	}
+
+	public String findDefinition(String word, String filename) throws FileNotFoundException {
+		long start = metrics.start();
+		DictionaryEvents.SlowLookup event = DictionaryEvents.SlowLookup.beginIfEnabled();
+		LookupCache<String, Word> currentCache = cache;
+		String key = currentCache == null ? null : cacheKey(word);
+		Word currentWord = currentCache == null ? null : currentCache.get(key);
+		boolean cached = currentWord != null;
+		if (currentWord == null) {
+			// the generation is read before the tree, so a word removed in between is not cached
+			long generation = currentCache == null ? 0 : currentCache.getGeneration();
+			currentWord = lookup(word, 0, word.length());
+			if (currentWord != null && currentCache != null) {
+				currentCache.put(key, currentWord, generation);
+			}
 		}
-		//currentWord = tree.search(newWord);
+		metrics.record(DictionaryMetrics.Operation.FIND, start);
+		commitLookup(event, word, currentWord != null, cached);
 		if (currentWord == null) {
-			return wordReader.possibleWords(word, filename);
+			return suggestWords(word);
 		} else {
 			return currentWord.getDefinition();
 		}
 	}
 
+	// Returns the definition of a word, or null when the dictionary does not contain
+	// it. Without a cache nothing is allocated, so a spell checker can pass each
+	// word of a text as a range of one reused buffer
+	public String lookupDefinition(CharSequence word, int start, int end) {
+		long started = metrics.start();
+		DictionaryEvents.SlowLookup event = DictionaryEvents.SlowLookup.beginIfEnabled();
+		Word found = lookup(word, start, end);
+		metrics.record(DictionaryMetrics.Operation.FIND, started);
+		if (event != null && event.shouldCommit()) {
+			// the word is only copied out of the caller's buffer for slow lookups
+			commitLookup(event, word.subSequence(start, end).toString(), found != null, false);
+		}
+		return found == null ? null : found.getDefinition();
+	}
+
+	// Helper method that records a lookup that started at event when it was slow
+	// enough for Flight Recorder to record it, event is null while not recorded
+	private void commitLookup(DictionaryEvents.SlowLookup event, String word, boolean found, boolean cached) {
+		if (event != null && event.shouldCommit()) {
+			event.word = word;
+			event.found = found;
+			event.cached = cached;
+			event.dictionarySize = dictionary.size();
+			event.commit();
+		}
+	}
+
+	// Returns the definitions of many words at once by word, in the order of the
+	// words, with null for the words the dictionary does not contain. All words are
+	// looked up under one read lock: a batch large enough compared to the dictionary
+	// is sorted in the order of the tree and found in one walk of the tree merged
+	// with it, a smaller one with a search per word, split between several threads
+	// when it holds at least parallelBatchSize words
+	public Map<String, String> findDefinitions(Collection<String> words) {
+		String[] batch = words.toArray(new String[0]);
+		Word[] found = dictionary.read(() -> {
+			// a walk visits every word once, a search per word takes about log2(size) steps
+			int size = tree.size();
+			if ((long) batch.length * (32 - Integer.numberOfLeadingZeros(size)) >= size) {
+				return walkSorted(batch);
+			}
+			return searchEach(batch);
+		});
+		Map<String, String> definitions = new LinkedHashMap<>();
+		for (int i = 0; i < batch.length; i++) {
+			definitions.put(batch[i], found[i] == null ? null : found[i].getDefinition());
+		}
+		return definitions;
+	}
+
+	// Helper method that finds the words of a batch in one walk of the tree, must be
+	// called with the read lock held. Returns the word found for each of them, or null
+	private Word[] walkSorted(String[] batch) {
+		String[] keys = new String[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			keys[i] = cacheKey(batch[i]);
+		}
+		// the distinct keys in the order of the tree, which is decreasing
+		String[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		Collections.reverse(Arrays.asList(sorted));
+		Map<String, Word> byKey = new HashMap<>();
+		int next = 0;
+		for (Word word : tree) {
+			String key = word.getKey();
+			// keys coming before the word in the order of the tree are not in it
+			while (next < sorted.length && sorted[next].compareTo(key) > 0) {
+				next++;
+			}
+			if (next == sorted.length) {
+				break;
+			}
+			if (sorted[next].equals(key)) {
+				byKey.put(key, word);
+				while (next < sorted.length && sorted[next].equals(key)) {
+					next++;
+				}
+			}
+		}
+		Word[] found = new Word[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			found[i] = byKey.get(keys[i]);
+		}
+		return found;
+	}
+
+	// Helper method that searches the tree for each word of a batch, must be called
+	// with the read lock held. Returns the word found for each of them, or null
+	private Word[] searchEach(String[] batch) {
+		BloomFilter filter = bloomFilter;
+		Word[] found = new Word[batch.length];
+		IntStream indexes = IntStream.range(0, batch.length);
+		if (batch.length >= parallelBatchSize) {
+			// the read lock held by this thread keeps the tree from changing for the others
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(i -> {
+			WordProbe probe = probes.get().set(batch[i]);
+			if (filter == null || filter.mightContain(probe)) {
+				found[i] = tree.find(probe);
+			}
+			probe.clear();
+		});
+		return found;
+	}
+
+	// Helper method that searches for the characters start to end of word, first in
+	// the Bloom filter and then in the tree, without creating a Word
+	private Word lookup(CharSequence word, int start, int end) {
+		WordProbe probe = probes.get().set(word, start, end);
+		try {
+			BloomFilter filter = bloomFilter;
+			if (filter != null && !filter.mightContain(probe)) {
+				// certainly not in the dictionary, the tree is not searched
+				return null;
+			}
+			return dictionary.find(probe);
+		} finally {
+			probe.clear();
+		}
+	}
+
+	// Returns up to limit words of the dictionary that start with the prefix, in
+	// the order of the tree. Finding the first word takes O(log n) time and
+	// every following word constant time
+	public List<Word> prefixRange(String prefix, int limit) {
+		String key = Word.normalize(prefix);
+		return dictionary.read(
+				() -> tree.rangeFrom(Word.prefixRangeStart(prefix), w -> w.getKey().startsWith(key), limit));
+	}
+
+	// Suggests the words closest to a misspelled word from the deletion index or
+	// the suggestion tree when one is enabled, and otherwise the words sharing its
+	// first characters
+	public String suggestWords(String word) {
+		long start = metrics.start();
+		DictionaryEvents.Suggestion event = new DictionaryEvents.Suggestion();
+		event.begin();
+		List<String> result = new ArrayList<>();
+		try {
+			List<Word> matches = dictionary.read(() -> {
+				event.dictionarySize = tree.size();
+				SymSpellIndex<Word> index = deletionIndex;
+				if (index != null) {
+					event.source = "deletion index";
+					return index.search(Word.normalize(word), index.getMaxDistance(), suggestionLimit);
+				}
+				BKTree<Word> suggestions = suggestionTree;
+				event.source = "BK-tree";
+				return suggestions == null ? null
+						: suggestions.search(Word.normalize(word), suggestionDistance, suggestionLimit,
+								suggestionBudgetNanos);
+			});
+			if (matches == null) {
+				event.source = "prefix";
+				matches = prefixMatches(word);
+			}
+			for (Word match : matches) {
+				result.add(match.getWord());
+			}
+			return "Possible words are: " + result;
+		} finally {
+			metrics.record(DictionaryMetrics.Operation.SUGGEST, start);
+			if (event.shouldCommit()) {
+				event.word = word;
+				event.suggestionCount = result.size();
+				event.commit();
+			}
+		}
+	}
+
+	// Suggests words that start with the first 2 characters of a word longer than
+	// 3 characters, or with the whole word otherwise
+	public String possibleWords(String word) {
+		List<String> result = new ArrayList<>();
+		for (Word match : prefixMatches(word)) {
+			result.add(match.getWord());
+		}
+		return "Possible words are: " + result;
+	}
+
+	// Helper method for possibleWords that returns the words it suggests
+	private List<Word> prefixMatches(String word) {
+		String prefix = word.length() > 3 ? word.substring(0, 2) : word;
+		return prefixRange(prefix, suggestionLimit);
+	}
+
 	public String removeWord(String word) {
-		Word newWord = new Word();
-		newWord.setWord(word);
-		if (tree.remove(newWord)) {
+		long start = metrics.start();
+		boolean removed;
+		long[] position = new long[1];
+		try {
+			removed = dictionary.write(() -> {
+				WordProbe probe = probes.get().set(word);
+				Word found = tree.find(probe);
+				probe.clear();
+				if (found == null) {
+					return false;
+				}
+				position[0] = logRemovals(Collections.singletonList(found));
+				boolean result = tree.remove(found);
+				if (result) {
+					removeFromIndexes(found);
+					userWords.add(found.getKey());
+				}
+				return result;
+			});
+			commit(position[0]);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not log the removal of " + word, e);
+		} finally {
+			invalidateCache(word);
+			metrics.record(DictionaryMetrics.Operation.REMOVE, start);
+		}
+		if (removed) {
 			return "Removed " + word;
 		}
 
@@ -59,10 +1140,74 @@ public class SearchBackend {
 	}
 
 	public String getStatisticsString() {
-		if (tree.isEmpty()) {
-			return "The dictionary is empty";
+		return dictionary.read(() -> {
+			if (tree.isEmpty()) {
+				return "The dictionary is empty";
+			}
+			String stats = "Number of Words in Dictionary: " + tree.size() + "\n" + pageString(1) + "\n"
+					+ loadStatistics;
+			LookupCache<String, Word> currentCache = cache;
+			if (currentCache != null) {
+				stats += "\n" + currentCache.getStatisticsString();
+			}
+			BloomFilter filter = bloomFilter;
+			if (filter != null) {
+				stats += "\n" + filter.getStatisticsString();
+			}
+			BKTree<Word> suggestions = suggestionTree;
+			if (suggestions != null) {
+				stats += "\nSpelling suggestions: " + suggestions.size() + " words, up to " + suggestionDistance
+						+ " edits, " + suggestionBudgetNanos / 1000 + " us per search";
+			}
+			SymSpellIndex<Word> index = deletionIndex;
+			if (index != null) {
+				stats += "\n" + index.getStatisticsString();
+			}
+			WriteAheadLog currentLog = log;
+			if (currentLog != null) {
+				stats += "\n" + currentLog.getStatisticsString();
+			}
+			if (metrics.isEnabled()) {
+				stats += "\n" + metrics.getStatisticsString();
+				if (tree instanceof RedBlackTree) {
+					stats += "\n" + metrics.getTreeMetrics().getStatisticsString(treeHeight(), tree.size());
+				}
+			}
+			return stats;
+		});
+	}
+
+	// Returns the number of pages needed to list all the words
+	public int getPageCount() {
+		return (dictionary.size() + pageSize - 1) / pageSize;
+	}
+
+	// Lists the words on a page, pages are numbered starting at 1
+	public String getPageString(int page) {
+		return dictionary.read(() -> pageString(page));
+	}
+
+	// Helper method for getPageString that must be called with the read lock held,
+	// read locks are not reentrant
+	private String pageString(int page) {
+		int pageCount = (tree.size() + pageSize - 1) / pageSize;
+		if (page < 1 || page > pageCount) {
+			return "There is no page " + page + ", the dictionary has " + pageCount + " pages";
 		}
-		String stats = "Number of Words in Dictionary: " + tree.size() + "\n" + "Words in order: " + tree.toString();
-		return stats;
+		int offset = (page - 1) * pageSize;
+		List<Word> words = tree.page(offset, pageSize);
+		return "Words " + (offset + 1) + " to " + (offset + words.size()) + " of " + tree.size() + ": " + words;
+	}
+
+	// Returns the position of a word in the sorted dictionary
+	public String getPositionString(String word) {
+		Word newWord = new Word();
+		newWord.setWord(word);
+		return dictionary.read(() -> {
+			if (!tree.contains(newWord)) {
+				return "The word " + word + " is not in the dictionary";
+			}
+			return "The word " + word + " is word " + (tree.rank(newWord) + 1) + " of " + tree.size();
+		});
 	}
 }
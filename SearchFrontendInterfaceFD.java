@@ -1,6 +1,9 @@
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
@@ -9,6 +12,8 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 	private WordReader wordReaderUsed = new WordReader();
 	private SearchBackend backend = new SearchBackend(treeUsed, wordReaderUsed);
 	private String fileName = "";
+	// directory holding the snapshot and the write-ahead log that keep added and removed words
+	private String dataDirectory = "dictionary-data";
 
 	/**
 	 * Helper method to display a wide row of dashes: a horizontal rule.
@@ -37,6 +42,7 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		hr(); // display welcome message
 		System.out.println("Welcome to the Dictionary Search App.");
 		hr();
+		openDataDirectory();
 
 		List<String> words = null;
 
@@ -47,6 +53,9 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 				case 'L': // System.out.println(" [L]oad data from file");
 					loadDataCommand();
 					break;
+				case 'U': // System.out.println("[U]pdate to a new version of a file");
+					reloadDataCommand();
+					break;
 				case 'A': // System.out.println(" Add Word [A]dd word + definition");
 					// words = chooseSearchWordsPrompt();
 					addWord();
@@ -57,11 +66,17 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 					break;
 				case 'S': // System.out.println("[S]earch for word");
 					words = chooseSearchWordsPrompt();
-					searchWord(listStringToString(words), fileName);
+					searchWords(words);
 					break;
 				case 'I': // System.out.println("[I]nfo for stats");
 					displayStatsCommand();
 					break;
+				case 'P': // System.out.println("[P]age through words");
+					pageCommand();
+					break;
+				case 'W': // System.out.println("[W]rite snapshot to file");
+					saveSnapshotCommand();
+					break;
 				case 'Q': // System.out.println(" [Q]uit");
 							// do nothing, containing loop condition will fail
 					break;
@@ -71,6 +86,11 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 			}
 		}
 
+		try {
+			backend.closeWriteAheadLog();
+		} catch (IOException e) {
+			System.out.println("Error: Could not close the write-ahead log: " + e.getMessage());
+		}
 		hr(); // thank user before ending this application
 		System.out.println("Thank you for using the Dictionary Search App.");
 		hr();
@@ -78,16 +98,38 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 	}
 
 	/**
-	 * Checks for the existence of a word and gives the user its definition.
+	 * Restores the words saved in the data directory by earlier runs, and keeps
+	 * every word added or removed from now on there. Without it changes are only
+	 * kept until the program ends.
+	 */
+	private void openDataDirectory() {
+		try {
+			int changes = backend.openWriteAheadLog(dataDirectory);
+			if (treeUsed.size() > 0) {
+				System.out.println("Restored " + treeUsed.size() + " words from " + dataDirectory + " (" + changes
+						+ " changes since the last snapshot)");
+			}
+		} catch (IOException e) {
+			System.out.println("Error: Could not open " + dataDirectory + ", changes will not be saved: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Checks for the existence of each word and gives the user its definition, or
+	 * suggests words with a similar spelling. All words are looked up in one batch.
 	 * 
-	 * @param word that user has selected
-	 * @throws FileNotFoundException
+	 * @param words that user has selected
 	 */
-	private void searchWord(String word, String filename) throws FileNotFoundException {
-		if (backend.findDefinition(word, filename) != null) {
-			System.out.println("Definition of " + word + ": " + backend.findDefinition(word, filename));
-		} else {
-			System.out.println("Word not found. Please check your spelling.");
+	private void searchWords(List<String> words) {
+		Map<String, String> definitions = backend.findDefinitions(words);
+		for (String word : words) {
+			String definition = definitions.get(word);
+			if (definition != null) {
+				System.out.println("Definition of " + word + ": " + definition);
+			} else {
+				System.out.println("Word " + word + " not found. Please check your spelling. " + backend.suggestWords(word));
+			}
 		}
 	}
 
@@ -102,10 +144,13 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		// display menu of choices
 		System.out.println("Choose a command from the list below:");
 		System.out.println("    [L]oad data from file");
+		System.out.println("    [U]pdate to a new version of a file");
 		System.out.println("    [A]dd word + definition");
 		System.out.println("    [R]emove word + definition");
 		System.out.println("    [S]earch for word");
 		System.out.println("    [I]nfo for stats");
+		System.out.println("    [P]age through words");
+		System.out.println("    [W]rite snapshot to file");
 		System.out.println("    [Q]uit");
 
 		// read in user's choice, and trim away any leading or trailing whitespace
@@ -120,6 +165,9 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 
 	/**
 	 * Prompt user to enter filename, and display error message when loading fails.
+	 * The file may either be a csv file or a snapshot written with saveSnapshotCommand.
+	 * Its words are added to the words loaded already, which keep their definitions.
+	 * Words the user removed are not added again.
 	 */
 	@Override
 	public void loadDataCommand() {
@@ -127,11 +175,70 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		String filename = userInput.nextLine().trim();
 		fileName = filename;
 		try {
-			backend.loadData(filename);
+			if (DictionarySnapshot.isSnapshot(filename)) {
+				backend.loadSnapshot(filename);
+			} else {
+				backend.loadData(filename);
+				System.out.println(backend.getLoadStatisticsString());
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("Error: Could not find or load file: " + filename);
+		} catch (IOException e) {
+			System.out.println("Error: Could not load snapshot " + filename + ": " + e.getMessage());
+		} catch (UncheckedIOException e) {
+			System.out.println("Error: Could not load " + filename + ": " + e.getCause().getMessage());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: Could not load " + filename + ": " + e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Prompt user to enter the name of a new version of a loaded file, and after
+	 * the user confirms it, update the dictionary to it: only the words that were
+	 * added, removed or changed in the file are changed. Words that are not in the
+	 * file are removed, except for the words the user added or removed.
+	 */
+	public void reloadDataCommand() {
+		System.out.println("Enter the name of the new version of the file: ");
+		String filename = userInput.nextLine().trim();
+		System.out.println("Words that are not in " + filename
+				+ " will be removed, words you added or removed are kept. Continue? [y/N]");
+		if (!userInput.nextLine().trim().equalsIgnoreCase("y")) {
+			System.out.println("Nothing was changed");
+			return;
+		}
+		fileName = filename;
+		try {
+			if (DictionarySnapshot.isSnapshot(filename)) {
+				System.out.println(backend.reloadSnapshot(filename));
+			} else {
+				System.out.println(backend.reloadData(filename));
+			}
 		} catch (FileNotFoundException e) {
 			System.out.println("Error: Could not find or load file: " + filename);
+		} catch (IOException e) {
+			System.out.println("Error: Could not load snapshot " + filename + ": " + e.getMessage());
+		} catch (UncheckedIOException e) {
+			System.out.println("Error: Could not load " + filename + ": " + e.getCause().getMessage());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: Could not load " + filename + ": " + e.getMessage());
 		}
+	}
 
+	/**
+	 * Prompt user to enter filename, and save the dictionary to it as a binary snapshot
+	 * that loads faster than the csv file.
+	 */
+	public void saveSnapshotCommand() {
+		System.out.println("Enter the name of the snapshot file to write: ");
+		String filename = userInput.nextLine().trim();
+		try {
+			backend.saveSnapshot(filename);
+			System.out.println("Saved " + treeUsed.size() + " words to " + filename);
+		} catch (IOException e) {
+			System.out.println("Error: Could not write snapshot " + filename + ": " + e.getMessage());
+		}
 	}
 
 	/**
@@ -173,8 +280,9 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		String newWord = userInput.nextLine();
 
 		// check that the word isnt already in the tree
-		if (backend.findDefinition(newWord, fileName) != null) {
-			System.out.println("Definition of " + newWord + ": " + backend.findDefinition(newWord, fileName));
+		String existing = backend.lookupDefinition(newWord, 0, newWord.length());
+		if (existing != null) {
+			System.out.println("Definition of " + newWord + ": " + existing);
 			return;
 		} else {
 			System.out.println("Input part of speech:");
@@ -201,7 +309,7 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		// create a outofDate array
 		List<String> outOfDate = new ArrayList<>();
 		// check that the word is in the tree
-		if (backend.findDefinition(newWord, fileName) != null) {
+		if (backend.lookupDefinition(newWord, 0, newWord.length()) != null) {
 			// add word to out of date array
 			outOfDate.add(newWord);
 			// remove word from current array
@@ -214,6 +322,27 @@ public class SearchFrontendInterfaceFD implements SearchFrontendInterface {
 		}
 	}
 
+	/**
+	 * Lets the user page through the words of the dictionary in order. Entering a
+	 * page number shows that page, entering a word shows its position, and
+	 * pressing enter returns to the main menu.
+	 */
+	public void pageCommand() {
+		while (true) {
+			System.out.println("Enter a page number (1 to " + backend.getPageCount()
+					+ "), a word to find its position, or press enter to return: ");
+			String input = userInput.nextLine().trim();
+			if (input.length() == 0) {
+				return;
+			}
+			try {
+				System.out.println(backend.getPageString(Integer.parseInt(input)));
+			} catch (NumberFormatException e) {
+				System.out.println(backend.getPositionString(input));
+			}
+		}
+	}
+
 	/**
 	 * Displays dataset statistics to System.out.
 	 */
@@ -1,51 +1,45 @@
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 
 public class SeparateWords implements WordInterface {
 
 	// List in which each index represents a line in the csv file
-	public ArrayList<String> getAllElements = new ArrayList<>();
+	public ArrayList<Word> getAllElements = new ArrayList<>();
 	// Variable used to select which word will be later related to an object
 	public int currentWord = 0;
 
 	@Override
 	public String getWord() { // returns the word related to an object
-		String[] temp = getAllElements.get(currentWord).split("\\/");
-		return temp[0];
+		return getAllElements.get(currentWord).getWord();
 	}
 
 	@Override
 	public String getPart() { // returns the part of the word related to an object
-		String[] temp = getAllElements.get(currentWord).split("\\/");
-		return temp[1];
+		return getAllElements.get(currentWord).getPart();
 	}
 
 	@Override
 	public String getDefinition() { // returns the definition of the word related to an object
-		String[] temp = getAllElements.get(currentWord).split("\\/");
-		return temp[2];
+		return getAllElements.get(currentWord).getDefinition();
 	}
 
 	public int compareTo(Object o) {
 		return 0;
 	}
 
-//Reads the CSV file and put each line into a different index
+//Reads the CSV file and put each line into a different index, each line is split
+//into its word, part and definition once while reading
 	public void readFile(String fileName) throws FileNotFoundException {
-		String csvFile = fileName;
-		String line = "";
-		String[] dataArray;
-		try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
-			// read each line of the file and store it in the list
-			while ((line = br.readLine()) != null) {
-				dataArray = line.split(",");
-				getAllElements.add(dataArray[0]); // modify the index to store the data you need
+		try (MappedDictionaryParser parser = new MappedDictionaryParser(fileName)) {
+			while (parser.next()) {
+				getAllElements.add(parser.toWord());
 			}
+		} catch (FileNotFoundException e) {
+			throw e;
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("Could not read " + fileName, e);
 		}
 	}
 
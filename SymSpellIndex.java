@@ -0,0 +1,205 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of keys by their deletion variants, for finding the keys closest to a
+ * misspelled word by Levenshtein distance with a few hash lookups (symmetric
+ * delete spelling correction). Two strings are within distance d of each
+ * other only when deleting at most d characters from each of them gives the
+ * same string, so every key is stored under all strings made by deleting up
+ * to maxDistance of its characters, and a search looks up the strings made by
+ * deleting characters from the query and checks the distance of the keys it
+ * finds under them.
+ *
+ * Only the first prefixLength characters of a key are used for its variants,
+ * which bounds their number for long words. Two strings within distance d
+ * have prefixes within distance d as well, so no key is missed, searches just
+ * check more candidates.
+ */
+public class SymSpellIndex<V> {
+
+    public static final int DEFAULT_PREFIX_LENGTH = 7;
+
+    private final int maxDistance;
+    private final int prefixLength;
+    private final Map<String, V> values = new HashMap<>();
+    // the keys stored under each variant: a String for one key, a String[] for several
+    private final Map<String, Object> variants = new HashMap<>();
+    private long variantChars = 0; // characters in all variants, for the footprint
+    private long references = 0; // keys stored under all variants together
+
+    /**
+     * @param maxDistance largest distance searches can use
+     * @param prefixLength number of characters of a key its variants are made from
+     */
+    public SymSpellIndex(int maxDistance, int prefixLength) {
+        if (maxDistance < 1 || prefixLength <= maxDistance) {
+            throw new IllegalArgumentException(
+                    "Invalid distance " + maxDistance + " or prefix length " + prefixLength + " for index");
+        }
+        this.maxDistance = maxDistance;
+        this.prefixLength = prefixLength;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Adds key with its value, or replaces the value when key is already in the index.
+     */
+    public void add(String key, V value) {
+        if (key == null || value == null) throw new NullPointerException("Index cannot store null references.");
+        if (values.put(key, value) != null) {
+            return;
+        }
+        for (String variant : deletions(key, maxDistance)) {
+            Object stored = variants.get(variant);
+            if (stored == null) {
+                variants.put(variant, key);
+                variantChars += variant.length();
+            } else if (stored instanceof String) {
+                variants.put(variant, new String[] { (String) stored, key });
+            } else {
+                String[] keys = (String[]) stored;
+                String[] grown = Arrays.copyOf(keys, keys.length + 1);
+                grown[keys.length] = key;
+                variants.put(variant, grown);
+            }
+            references++;
+        }
+    }
+
+    /**
+     * Removes key and all its variants.
+     * @return true when the key was in the index
+     */
+    public boolean remove(String key) {
+        if (values.remove(key) == null) {
+            return false;
+        }
+        for (String variant : deletions(key, maxDistance)) {
+            Object stored = variants.get(variant);
+            if (stored instanceof String) {
+                variants.remove(variant);
+                variantChars -= variant.length();
+            } else if (stored != null) {
+                String[] keys = (String[]) stored;
+                String[] shrunk = new String[keys.length - 1];
+                int count = 0;
+                for (String other : keys) {
+                    if (!other.equals(key) && count < shrunk.length) shrunk[count++] = other;
+                }
+                variants.put(variant, shrunk.length == 1 ? shrunk[0] : shrunk);
+            }
+            references--;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values of up to limit keys within distance of query, closest
+     * first and equally close keys in increasing order.
+     * @throws IllegalArgumentException when distance is larger than the index supports
+     */
+    public List<V> search(String query, int distance, int limit) {
+        if (distance > maxDistance) {
+            throw new IllegalArgumentException("Index only supports distances up to " + maxDistance + ": " + distance);
+        }
+        List<String> matches = new ArrayList<>();
+        List<Integer> distances = new ArrayList<>();
+        Set<String> checked = new HashSet<>();
+        for (String variant : deletions(query, distance)) {
+            Object stored = variants.get(variant);
+            if (stored instanceof String) {
+                check((String) stored, query, distance, checked, matches, distances);
+            } else if (stored != null) {
+                for (String key : (String[]) stored) {
+                    check(key, query, distance, checked, matches, distances);
+                }
+            }
+        }
+        Integer[] order = new Integer[matches.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> distances.get(a).equals(distances.get(b))
+                ? matches.get(a).compareTo(matches.get(b)) : Integer.compare(distances.get(a), distances.get(b)));
+        List<V> result = new ArrayList<>(Math.min(limit, order.length));
+        for (int i = 0; i < order.length && i < limit; i++) {
+            result.add(values.get(matches.get(order[i])));
+        }
+        return result;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by the variants, which
+     * is most of the memory of the index, and of the map of keys to values.
+     * Strings are counted with one byte per character.
+     */
+    public long getFootprint() {
+        // a map entry with its table slot, a String with its byte array, and a
+        // reference in an array when a variant holds several keys
+        long perEntry = 36 + 24 + 16;
+        return variants.size() * perEntry + variantChars + 4 * references + values.size() * 36L;
+    }
+
+    public String getStatisticsString() {
+        return String.format("Deletion index: %d words, %d variants, up to %d edits on %d characters, about %d bytes",
+                values.size(), variants.size(), maxDistance, prefixLength, getFootprint());
+    }
+
+    // ---------------------------------------------------------------------------
+    // Helper methods
+
+    // Adds key to the matches when it was not checked before and is close enough to query
+    private static void check(String key, String query, int distance, Set<String> checked, List<String> matches,
+            List<Integer> distances) {
+        if (!checked.add(key)) {
+            return;
+        }
+        int keyDistance = BKTree.distance(query, key, distance);
+        if (keyDistance <= distance) {
+            matches.add(key);
+            distances.add(keyDistance);
+        }
+    }
+
+    /**
+     * Returns the prefix of key and all strings made by deleting up to count of
+     * its characters.
+     */
+    private Set<String> deletions(String key, int count) {
+        String prefix = key.length() > prefixLength ? key.substring(0, prefixLength) : key;
+        Set<String> result = new HashSet<>();
+        result.add(prefix);
+        List<String> level = new ArrayList<>();
+        level.add(prefix);
+        for (int deleted = 1; deleted <= count; deleted++) {
+            List<String> next = new ArrayList<>();
+            for (String variant : level) {
+                for (int i = 0; i < variant.length(); i++) {
+                    String shorter = variant.substring(0, i) + variant.substring(i + 1);
+                    if (result.add(shorter)) {
+                        next.add(shorter);
+                    }
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+}
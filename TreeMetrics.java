@@ -0,0 +1,134 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work a RedBlackTree does: the comparisons of every search,
+ * and for every case of restoring the red-black properties after an insert
+ * or a remove how often it happened and how many rotations and recolorings it
+ * took. A tree only counts while it has a TreeMetrics set, without one the
+ * counting costs a single null check per operation.
+ *
+ * Searches may run on many threads at once, so all counters are adders.
+ */
+public class TreeMetrics {
+
+    /**
+     * The cases of restoring the red-black properties.
+     */
+    public enum Fixup {
+        INSERT_BLACK_PARENT, // nothing to do
+        INSERT_RED_UNCLE, // recolor parent, uncle and grandparent, and continue at the grandparent
+        INSERT_OUTER_CHILD, // one rotation at the grandparent
+        INSERT_INNER_CHILD, // a rotation at the parent, then one at the grandparent
+        REMOVE_RED_OR_ROOT, // the node is a red leaf or the root, nothing to do
+        REMOVE_ONE_CHILD, // the child takes the place and the color of the node
+        REMOVE_RED_SIBLING, // rotate the sibling above the parent and continue
+        REMOVE_FAR_RED_NEPHEW, // one rotation resolves the missing black
+        REMOVE_NEAR_RED_NEPHEW, // rotate the nephew into the far position and continue
+        REMOVE_BLACK_NEPHEWS // recolor the sibling and continue at the parent
+    }
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAccumulator maxComparisons = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] cases = adders();
+    private final LongAdder[] rotations = adders();
+    private final LongAdder[] recolors = adders();
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Fixup.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Counts a search that compared the searched value with count nodes.
+     */
+    public void recordSearch(int count) {
+        searches.increment();
+        comparisons.add(count);
+        maxComparisons.accumulate(count);
+    }
+
+    /**
+     * Counts one occurrence of a fixup case with the rotations and recolorings it took.
+     */
+    public void recordFixup(Fixup fixup, int rotationCount, int recolorCount) {
+        cases[fixup.ordinal()].increment();
+        rotations[fixup.ordinal()].add(rotationCount);
+        recolors[fixup.ordinal()].add(recolorCount);
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    public double getComparisonsPerSearch() {
+        long count = searches.sum();
+        return count == 0 ? 0 : (double) comparisons.sum() / count;
+    }
+
+    public long getMaxComparisons() {
+        return maxComparisons.get();
+    }
+
+    public Map<String, Long> getCases() {
+        return sums(cases);
+    }
+
+    public Map<String, Long> getRotations() {
+        return sums(rotations);
+    }
+
+    public Map<String, Long> getRecolors() {
+        return sums(recolors);
+    }
+
+    private static Map<String, Long> sums(LongAdder[] adders) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Fixup fixup : Fixup.values()) {
+            result.put(fixup.name(), adders[fixup.ordinal()].sum());
+        }
+        return result;
+    }
+
+    public void reset() {
+        searches.reset();
+        comparisons.reset();
+        maxComparisons.reset();
+        for (int i = 0; i < cases.length; i++) {
+            cases[i].reset();
+            rotations[i].reset();
+            recolors[i].reset();
+        }
+    }
+
+    /**
+     * @param height the current height of the tree
+     * @param size the current number of nodes of the tree
+     */
+    public String getStatisticsString(int height, int size) {
+        StringBuilder stats = new StringBuilder(String.format(
+                "Tree: height %d of at most %.1f, %d searches with %.1f comparisons on average and %d at most",
+                height, heightBound(size), getSearches(), getComparisonsPerSearch(), getMaxComparisons()));
+        for (Fixup fixup : Fixup.values()) {
+            long count = cases[fixup.ordinal()].sum();
+            if (count > 0) {
+                stats.append(String.format("\n  %s: %d times, %d rotations, %d recolorings", fixup.name(), count,
+                        rotations[fixup.ordinal()].sum(), recolors[fixup.ordinal()].sum()));
+            }
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Returns the largest height a red-black tree with size nodes can have, 2 log2(size + 1).
+     */
+    public static double heightBound(int size) {
+        return 2 * Math.log(size + 1.0) / Math.log(2);
+    }
+}
@@ -3,9 +3,36 @@ public class Word implements Comparable<Word>, WordInterface {
 	String word = (String) "";
 	String def = (String) "";
 	String part = (String) "";
+	String key = ""; // the word with its case folded, words are compared by their keys
 
 	public void setWord(String newWord) {
 		word = newWord;
+		key = normalize(newWord);
+	}
+
+	// Folds the case of every character the same way equalsIgnoreCase does, so two
+	// words are equal ignoring case exactly when their normalized forms are equal.
+	// Returns the word itself when nothing changes
+	public static String normalize(String word) {
+		for (int i = 0; i < word.length(); i++) {
+			char c = word.charAt(i);
+			if (fold(c) != c) {
+				char[] folded = word.toCharArray();
+				for (int j = i; j < folded.length; j++) {
+					folded[j] = fold(folded[j]);
+				}
+				return new String(folded);
+			}
+		}
+		return word;
+	}
+
+	static char fold(char c) {
+		if (c < 128) {
+			// fast path for the common case of ASCII letters
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
 	}
 
 	public void setPart(String newPart) {
@@ -31,17 +58,43 @@ public class Word implements Comparable<Word>, WordInterface {
 		return def;
 	}
 
+	// Returns the normalized word that words are compared by
+	public String getKey() {
+		return key;
+	}
+
+	// Words are sorted from last to first ignoring case, which is the reverse
+	// order of their keys
 	@Override
 	public int compareTo(Word lit) {
-		if (this.word.equalsIgnoreCase(lit.word)) {
-			return 0;
-		}
-		else if (this.word.compareTo(lit.word) < 0) {
-			return 1;
-		}
-		else {
-			return -1;
+		return lit.key.compareTo(this.key);
+	}
+
+	// Compares the characters start to end of chars with this word in the order of
+	// compareTo: the result is what other.compareTo(this) returns for a Word other
+	// holding those characters. Nothing is allocated, so lookups can use a reused
+	// buffer
+	public int compareTo(CharSequence chars, int start, int end) {
+		int length = end - start;
+		int common = Math.min(length, key.length());
+		for (int i = 0; i < common; i++) {
+			char c = fold(chars.charAt(start + i));
+			char k = key.charAt(i);
+			if (c != k) {
+				return k - c;
+			}
 		}
+		return key.length() - length;
+	}
+
+	// Returns a Word that comes before every word starting with the prefix in
+	// the order of compareTo, to be used as the start of a prefix range. Since
+	// words are sorted from last to first, this is the prefix followed by the
+	// largest possible character
+	public static Word prefixRangeStart(String prefix) {
+		Word start = new Word();
+		start.setWord(prefix + Character.MAX_VALUE);
+		return start;
 	}
 
 	public String toString() {
@@ -0,0 +1,61 @@
+// A reusable search key for looking up words by their characters without
+// creating a Word. It refers to a range of characters of any CharSequence, for
+// example a StringBuilder or a CharBuffer the caller keeps reusing, and reads
+// them as the normalized key of a word, so it can also be hashed like one
+public class WordProbe implements RedBlackTreeInterface.Probe<Word>, CharSequence {
+
+	private CharSequence chars = "";
+	private int start = 0;
+	private int end = 0;
+
+	// Points the probe at the whole of chars
+	public WordProbe set(CharSequence chars) {
+		return set(chars, 0, chars.length());
+	}
+
+	// Points the probe at the characters start to end of chars
+	public WordProbe set(CharSequence chars, int start, int end) {
+		if (start < 0 || end < start || end > chars.length()) {
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + " of " + chars.length() + " characters");
+		}
+		this.chars = chars;
+		this.start = start;
+		this.end = end;
+		return this;
+	}
+
+	// Lets go of the characters, so a probe kept for reuse does not keep them alive
+	public void clear() {
+		chars = "";
+		start = end = 0;
+	}
+
+	@Override
+	public int compareTo(Word value) {
+		return value.compareTo(chars, start, end);
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	// Returns the character at index with its case folded like in Word.getKey
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException("Index " + index + " of " + (end - start) + " characters");
+		}
+		return Word.fold(chars.charAt(start + index));
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		return toString().substring(from, to);
+	}
+
+	@Override
+	public String toString() {
+		return Word.normalize(chars.subSequence(start, end).toString());
+	}
+}
@@ -1,42 +1,67 @@
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class WordReader implements WordReaderInterface {
 	public RedBlackTree<Word> temp = new RedBlackTree<Word>(); // redblacktree with the dictionary data
 
+	// Statistics about the most recent call to streamWordsFromFile
+	protected long linesRead = 0;
+	protected long bytesRead = 0;
+	protected long loadNanos = 0;
+
 	// Creates one object for each word in the dictionary and returns a list with
 	// all the objects
 	public List<Word> readWordsFromFile(String filename) throws FileNotFoundException {
-		//This method creates a new separateWords object and add it to the result list
-		//SeparateWords object contains getPart, getWord, and getDefinition methods,which do not
-		//have to be called in other classes; instead, callinng getInformationByWord is more than sufficient
 		List<Word> result = new ArrayList<>();
-		SeparateWords foo = new SeparateWords();
-		foo.readFile(filename);
-		for (int i = 0; i < foo.numberOfWords(); i++) {
+		streamWordsFromFile(filename, result::add);
+		return result;
+	}
 
-			SeparateWords fooAdd = new SeparateWords();
-			fooAdd.readFile(filename);
-		    fooAdd.currentWord = i;
-			Word tempWord = new Word();
-			tempWord.setWord(fooAdd.getWord());
-			tempWord.setPart(fooAdd.getPart());
-			tempWord.setDefinition(fooAdd.getDefinition());
-		    result.add(tempWord);
-			//((List<Word>) result).add(fooAdd);
+	// Reads the file once from start to end, parses each word/part/definition
+	// record a single time and hands the resulting Word to the sink as soon as it
+	// is read, so no intermediate list of lines or words is kept. A file that
+	// cannot be read to the end throws an UncheckedIOException, so a cut off list
+	// of words is never taken for the whole file
+	public void streamWordsFromFile(String filename, Consumer<Word> sink) throws FileNotFoundException {
+		long start = System.nanoTime();
+		linesRead = 0;
+		bytesRead = 0;
+		try (MappedDictionaryParser parser = new MappedDictionaryParser(filename)) {
+			while (parser.next()) {
+				sink.accept(parser.toWord());
+			}
+			linesRead = parser.getRecordsRead();
+			bytesRead = parser.getBytesRead();
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + filename, e);
+		} finally {
+			loadNanos = System.nanoTime() - start;
 		}
+	}
 
-		return result;
+	// Returns the throughput of the last load in lines and bytes per second
+	public String getLoadStatisticsString() {
+		double seconds = loadNanos / 1_000_000_000.0;
+		if (seconds <= 0) {
+			return "No file loaded";
+		}
+		return String.format("Loaded %d lines (%d bytes) in %.3f s: %.0f lines/s, %.0f bytes/s", linesRead,
+				bytesRead, seconds, linesRead / seconds, bytesRead / seconds);
 	}
 
 	// Helper method that returns the part of the word associated to the object to
 	// be user in getInformationByWord()
 	public String getPartByWord(String word, String filename) throws FileNotFoundException {
 
-		for (int i = 0; i < readWordsFromFile(filename).size(); i++) {
-			if (readWordsFromFile(filename).get(i).getWord().equals(word)) {
-				return (String) readWordsFromFile(filename).get(i).getPart();
+		for (Word current : readWordsFromFile(filename)) {
+			if (current.getWord().equals(word)) {
+				return current.getPart();
 			}
 		}
 		return null;
@@ -46,9 +71,9 @@ public class WordReader implements WordReaderInterface {
 	// object to be user in getInformationByWord()
 	public String getDefinitionByWord(String word, String filename) throws FileNotFoundException {
 
-		for (int i = 0; i < readWordsFromFile(filename).size(); i++) {
-			if (readWordsFromFile(filename).get(i).getWord().equals(word)) {
-				return (String) readWordsFromFile(filename).get(i).getDefinition();
+		for (Word current : readWordsFromFile(filename)) {
+			if (current.getWord().equals(word)) {
+				return current.getDefinition();
 			}
 		}
 		return null;
@@ -70,14 +95,12 @@ public class WordReader implements WordReaderInterface {
 	// Loads all the words into the Red-Black Tree
 	public void loadRBT(String fileName) throws FileNotFoundException {
 
-		int size = readWordsFromFile(fileName).size();
 		//Runs through all the words in the dictionary and add it to the RBT
-		for (int i = 0; i < size; i++) {
-			String currentWord = (String) readWordsFromFile(fileName).get(i).getWord();
+		streamWordsFromFile(fileName, word -> {
 			Word curr = new Word();
-			curr.setWord(currentWord);
+			curr.setWord(word.getWord());
 			temp.insert(curr);
-		}
+		});
 	}
 
 	// Provides possible words by getting the first 2 characters of a word if the
@@ -92,10 +115,9 @@ public class WordReader implements WordReaderInterface {
 		} else {
 			prefix = word;
 		}
-		int size = readWordsFromFile(filename).size();
-		for (int i = 0; i < size; i++) {
-			String currentWord = (String) readWordsFromFile(filename).get(i).getWord();
-			if (currentWord.substring(0, prefix.length()).equals(prefix)) {
+		for (Word current : readWordsFromFile(filename)) {
+			String currentWord = current.getWord();
+			if (currentWord.startsWith(prefix)) {
 				result.add(currentWord);
 			}
 		}
@@ -0,0 +1,264 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the words added to and removed from a dictionary since
+ * its last snapshot, so changes survive a restart.
+ *
+ * The file starts with the magic number and the format version, followed by
+ * one record per change: the length of its body, a CRC32 checksum of the body
+ * and the body itself, which is the type of change followed by the word and,
+ * for an added word, its part of speech and definition. Strings are stored
+ * like in DictionarySnapshot. A record that was only partly written when the
+ * program stopped fails its checksum, and it and everything after it is cut
+ * off when the log is opened.
+ *
+ * Appending only writes to the operating system, a change is durable once
+ * sync has returned for it. Writers that call sync while another writer is
+ * forcing the file to disk wait for it and are then covered together by one
+ * more force (group commit), so many concurrent changes share one fsync.
+ *
+ * Every record holds the whole new state of its word, so replaying records
+ * that are already contained in the snapshot changes nothing.
+ */
+public class WriteAheadLog implements Closeable {
+
+	public static final int MAGIC = 0x5444574C; // "TDWL"
+	public static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 + 4;
+	// length and checksum in front of every record body
+	private static final int RECORD_HEADER_BYTES = 4 + 4;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final ReentrantLock syncLock = new ReentrantLock();
+	private final Condition synced = syncLock.newCondition();
+	// bytes appended and bytes known to be on disk since the log was opened, they
+	// keep growing when the log is reset so positions handed out stay comparable
+	private volatile long appended = 0;
+	private long durable = 0; // guarded by syncLock
+	private boolean syncing = false; // guarded by syncLock, true while a writer forces the file
+	private long records = 0; // records in the file
+	private long syncCount = 0; // number of times the file was forced to disk
+	private long appendCount = 0; // number of records appended since the log was opened
+
+	// Opens the log, creating it when it does not exist, and cuts off a record
+	// that was only partly written
+	public WriteAheadLog(Path file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) {
+				writeHeader();
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				if (channel.read(header, 0) < HEADER_BYTES || header.getInt(0) != MAGIC) {
+					throw new IOException(file + " is not a write-ahead log");
+				}
+				if (header.getInt(4) != VERSION) {
+					throw new IOException("Unsupported write-ahead log version " + header.getInt(4));
+				}
+				long end = scan(null, null);
+				if (end < channel.size()) {
+					channel.truncate(end);
+					channel.force(false);
+				}
+			}
+			channel.position(channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// Reads all records in the order they were written and hands every added
+	// word to added and every removed word to removed
+	public void replay(Consumer<Word> added, Consumer<String> removed) throws IOException {
+		scan(added, removed);
+	}
+
+	// Appends a record of an added word and returns its position for sync
+	public long appendAdd(Word word) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bytes);
+		body.writeByte(ADD);
+		DictionarySnapshot.writeString(body, word.getWord());
+		DictionarySnapshot.writeString(body, word.getPart());
+		DictionarySnapshot.writeString(body, word.getDefinition());
+		return append(bytes.toByteArray());
+	}
+
+	// Appends a record of a removed word and returns its position for sync
+	public long appendRemove(String word) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bytes);
+		body.writeByte(REMOVE);
+		DictionarySnapshot.writeString(body, word);
+		return append(bytes.toByteArray());
+	}
+
+	// Returns once every record up to position is on disk. Only one writer forces
+	// the file at a time, the others wait and are covered by the next force
+	public void sync(long position) throws IOException {
+		syncLock.lock();
+		try {
+			while (durable < position) {
+				if (syncing) {
+					synced.awaitUninterruptibly();
+					continue;
+				}
+				// everything appended so far is covered by this force
+				long upTo = appended;
+				syncing = true;
+				boolean forced = false;
+				syncLock.unlock();
+				try {
+					channel.force(false);
+					forced = true;
+				} finally {
+					syncLock.lock();
+					syncing = false;
+					if (forced) {
+						durable = Math.max(durable, upTo);
+						syncCount++;
+					}
+					synced.signalAll();
+				}
+			}
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	// Removes all records once they are contained in a new snapshot. No records
+	// may be appended at the same time
+	public synchronized void reset() throws IOException {
+		channel.truncate(HEADER_BYTES);
+		channel.position(HEADER_BYTES);
+		channel.force(false);
+		records = 0;
+		syncLock.lock();
+		try {
+			durable = Math.max(durable, appended);
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	// Returns the size of the file in bytes
+	public long size() throws IOException {
+		return channel.size();
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public String getStatisticsString() {
+		long forces;
+		syncLock.lock();
+		try {
+			forces = syncCount;
+		} finally {
+			syncLock.unlock();
+		}
+		synchronized (this) {
+			return String.format("Write-ahead log: %d records since the last snapshot, %d changes written with %d syncs",
+					records, appendCount, forces);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// Helper method that writes a record with its length and checksum at the end
+	// of the file. Records are appended one at a time so they are never interleaved
+	private synchronized long append(byte[] body) throws IOException {
+		CRC32 checksum = new CRC32();
+		checksum.update(body);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.length);
+		record.putInt(body.length).putInt((int) checksum.getValue()).put(body).flip();
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+		records++;
+		appendCount++;
+		appended += record.capacity();
+		return appended;
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+		channel.write(header, 0);
+		channel.force(false);
+	}
+
+	// Helper method that reads the records from the start of the file until the
+	// end or the first record that is cut off or fails its checksum, and returns
+	// the position after the last good record. Consumers may be null
+	private synchronized long scan(Consumer<Word> added, Consumer<String> removed) throws IOException {
+		long position = HEADER_BYTES;
+		long size = channel.size();
+		long count = 0;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+		while (position + RECORD_HEADER_BYTES <= size) {
+			header.clear();
+			channel.read(header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(length);
+			while (body.hasRemaining()) {
+				if (channel.read(body, position + RECORD_HEADER_BYTES + body.position()) < 0) {
+					break;
+				}
+			}
+			CRC32 checksum = new CRC32();
+			checksum.update(body.array());
+			if ((int) checksum.getValue() != header.getInt(4)) {
+				break;
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+			byte type = in.readByte();
+			if (type == ADD) {
+				Word word = new Word();
+				word.setWord(DictionarySnapshot.readString(in));
+				word.setPart(DictionarySnapshot.readString(in));
+				word.setDefinition(DictionarySnapshot.readString(in));
+				if (added != null) {
+					added.accept(word);
+				}
+			} else if (type == REMOVE) {
+				String word = DictionarySnapshot.readString(in);
+				if (removed != null) {
+					removed.accept(word);
+				}
+			} else {
+				throw new IOException("Unknown write-ahead log record type " + type + " in " + file);
+			}
+			position += RECORD_HEADER_BYTES + length;
+			count++;
+		}
+		records = count;
+		return position;
+	}
+}
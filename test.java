@@ -8,6 +8,6 @@ public class test {
         sb.loadWord("chicken", "noun", "bawk bawk");
         System.out.println(rbt.size());
         sb.removeWord("chicken");
-        System.out.println(sb.currentWord == null);
+        System.out.println(rbt.isEmpty());
     }
 }